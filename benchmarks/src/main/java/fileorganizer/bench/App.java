@@ -0,0 +1,178 @@
+package fileorganizer.bench;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+// The app's entry points, for the benchmarks.
+//
+// The app lives in the unnamed package, which code in a named package cannot refer to, and JMH only
+// accepts benchmarks in a named package. So the methods are looked up once, here; a call through a
+// static final MethodHandle is inlined by the JIT like a direct call and does not show in the numbers.
+final class App {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final Class<?> LOGIC = type("FileOrganizerLogic");
+    private static final Class<?> OPTIONS = type("OrganizeOptions");
+    private static final Class<?> DECISION = type("OverwriteDecision");
+    private static final Class<?> REGISTRY = type("NameRegistry");
+    private static final Class<?> CHUNKED = type("ChunkedTransfer");
+
+    private static final MethodHandle EXT_OF = method(LOGIC, "extOf", String.class, String.class);
+    private static final MethodHandle CATEGORY_FOR_EXT = method(LOGIC, "categoryForExt", String.class, String.class);
+    private static final MethodHandle SCAN_EXTENSIONS = method(LOGIC, "scanExtensionsByCategory", Map.class, String.class, boolean.class);
+    private static final MethodHandle ORGANIZE = method(LOGIC, "moveOrCopyAllFileTypes", void.class,
+            String.class, String.class, String.class, boolean.class, OPTIONS, Consumer.class, BiFunction.class)
+            .asType(MethodType.methodType(void.class, String.class, String.class, String.class, boolean.class,
+                    Object.class, Consumer.class, BiFunction.class));
+    private static final MethodHandle NEW_OPTIONS = constructor(OPTIONS, int.class).asType(MethodType.methodType(Object.class, int.class));
+
+    private static final MethodHandle CHUNKED_COPY = method(CHUNKED, "copy", void.class, Path.class, Path.class, boolean.class, LongConsumer.class);
+
+    private static final MethodHandle NEW_REGISTRY = constructor(REGISTRY).asType(MethodType.methodType(Object.class));
+    private static final MethodHandle IS_TAKEN = virtual(REGISTRY, "isTaken", boolean.class, File.class);
+    private static final MethodHandle MARK_TAKEN = virtual(REGISTRY, "markTaken", void.class, File.class);
+    private static final MethodHandle CLAIM_COPY_NAME = virtual(REGISTRY, "claimCopyName", File.class, File.class, Predicate.class);
+
+    private App() {}
+
+    //============================================= APP CALLS ===========================================================
+
+    static String extOf(String fileName) {
+        try {
+            return (String) EXT_OF.invokeExact(fileName);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static String categoryForExt(String ext) {
+        try {
+            return (String) CATEGORY_FOR_EXT.invokeExact(ext);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Set<String>> scanExtensionsByCategory(String folder, boolean deepScan) {
+        try {
+            return (Map<String, Set<String>>) SCAN_EXTENSIONS.invokeExact(folder, deepScan);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    // A whole organize run (processDirectory and the transfers) with every file type, "Keep Both" on collisions
+    static void organize(String source, String destination, String action, boolean deepScan, int workers) {
+        Object keepBoth = decision("KEEP_BOTH");
+        BiFunction<File, boolean[], Object> onConflict = (file, applyToAll) -> {
+            applyToAll[0] = true;
+            return keepBoth;
+        };
+        try {
+            Object options = NEW_OPTIONS.invokeExact(workers);
+            ORGANIZE.invokeExact(source, destination, action, deepScan, options, (Consumer<String>) message -> {}, (BiFunction<?, ?, ?>) onConflict);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    // The large-file copy path: transferTo in chunks, onChunk gets the bytes of each one
+    static void chunkedCopy(Path source, Path target, boolean replace, LongConsumer onChunk) {
+        try {
+            CHUNKED_COPY.invokeExact(source, target, replace, onChunk);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static Object newNameRegistry() {
+        try {
+            return NEW_REGISTRY.invokeExact();
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static boolean isTaken(Object registry, File file) {
+        try {
+            return (boolean) IS_TAKEN.invokeExact(registry, file);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static void markTaken(Object registry, File file) {
+        try {
+            MARK_TAKEN.invokeExact(registry, file);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    // The "Keep Both" name lookup (what used to be nextAvailableName)
+    static File claimCopyName(Object registry, File target, Predicate<File> accept) {
+        try {
+            return (File) CLAIM_COPY_NAME.invokeExact(registry, target, accept);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    //============================================= LOOKUP ===========================================================
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object decision(String name) {
+        return Enum.valueOf((Class) DECISION, name);
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("App class not on the classpath: " + name, e);
+        }
+    }
+
+    private static MethodHandle method(Class<?> owner, String name, Class<?> returns, Class<?>... parameters) {
+        try {
+            return LOOKUP.findStatic(owner, name, MethodType.methodType(returns, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("App method not found: " + owner.getName() + "." + name, e);
+        }
+    }
+
+    // The receiver is typed Object, so callers can use invokeExact without naming the app class
+    private static MethodHandle virtual(Class<?> owner, String name, Class<?> returns, Class<?>... parameters) {
+        try {
+            MethodHandle handle = LOOKUP.findVirtual(owner, name, MethodType.methodType(returns, parameters));
+            return handle.asType(handle.type().changeParameterType(0, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("App method not found: " + owner.getName() + "." + name, e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            return LOOKUP.findConstructor(owner, MethodType.methodType(void.class, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("App constructor not found: " + owner.getName(), e);
+        }
+    }
+
+    private static RuntimeException failure(Throwable t) {
+        if (t instanceof RuntimeException e) return e;
+        if (t instanceof Error e) throw e;
+        return new IllegalStateException(t);
+    }
+}
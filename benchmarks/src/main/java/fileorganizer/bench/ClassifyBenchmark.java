@@ -0,0 +1,46 @@
+package fileorganizer.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Per-file cost of naming a file's type: extOf and categoryForExt (with the active rules), over a
+// realistic name mix. One operation = one file name.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassifyBenchmark {
+
+    private static final int NAMES = 4096;      // power of two: the index wraps with a mask
+
+    private String[] names;
+    private String[] exts;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        names = TreeGenerator.names(NAMES, 42);
+        exts = new String[NAMES];
+        for (int i = 0; i < NAMES; i++) exts[i] = App.extOf(names[i]);
+    }
+
+    @Benchmark
+    public String extOf() {
+        return App.extOf(names[next++ & (NAMES - 1)]);
+    }
+
+    @Benchmark
+    public String categoryForExt() {
+        return App.categoryForExt(exts[next++ & (NAMES - 1)]);
+    }
+
+    // Both, as the scan does for every file
+    @Benchmark
+    public void extOfAndCategory(Blackhole blackhole) {
+        blackhole.consume(App.categoryForExt(App.extOf(names[next++ & (NAMES - 1)])));
+    }
+}
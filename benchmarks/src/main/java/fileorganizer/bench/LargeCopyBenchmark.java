@@ -0,0 +1,59 @@
+package fileorganizer.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+// One large file copied next to itself: Files.copy (the baseline) against the chunked transferTo path
+// the transfers switch to from ChunkedTransfer.LARGE_FILE_BYTES up, which reports progress per chunk.
+// The source is written once per trial; the copy is deleted after every measurement, outside the time.
+// Pass -jvmArgsAppend -Djava.io.tmpdir=DIR to measure another drive.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LargeCopyBenchmark {
+
+    @Param({"1", "64", "512"})
+    public int sizeMB;
+
+    private Path root;
+    private Path source;
+    private Path target;
+    private long chunks;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("organizer-largecopy");
+        source = root.resolve("source.mkv");
+        target = root.resolve("target.mkv");
+        TreeGenerator.writeFile(source, sizeMB * 1024L * 1024, 42);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteCopy() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        TreeGenerator.deleteTree(root);
+    }
+
+    @Benchmark
+    public Path filesCopy() throws IOException {
+        return Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Benchmark
+    public long chunkedTransferTo() {
+        App.chunkedCopy(source, target, true, bytes -> chunks++);
+        return chunks;
+    }
+}
@@ -0,0 +1,62 @@
+package fileorganizer.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// "Keep Both" naming: CLAIMS files arrive in a category folder that already holds `existing` files,
+// all named after `bases` different names, so every one of them needs a free "name (n).ext".
+// One operation = one file; the folder listing the registry makes once per run is included.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NameRegistryBenchmark {
+
+    private static final int CLAIMS = 1000;
+
+    @Param({"1000"})
+    public int existing;
+
+    @Param({"1", "100"})
+    public int bases;
+
+    private Path folder;
+    private File[] targets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("organizer-names");
+        for (int i = 0; i < existing; i++) Files.createFile(folder.resolve("IMG_" + (i % bases) + (i < bases ? "" : " (" + (i / bases) + ")") + ".jpg"));
+
+        targets = new File[CLAIMS];
+        for (int i = 0; i < CLAIMS; i++) targets[i] = folder.resolve("IMG_" + (i % bases) + ".jpg").toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        TreeGenerator.deleteTree(folder);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CLAIMS)
+    public int keepBoth() {
+        Object registry = App.newNameRegistry();
+        int claimed = 0;
+        for (File target : targets) {
+            if (App.isTaken(registry, target)) {
+                App.claimCopyName(registry, target, f -> true);
+                claimed++;
+            } else {
+                App.markTaken(registry, target);
+            }
+        }
+        return claimed;
+    }
+}
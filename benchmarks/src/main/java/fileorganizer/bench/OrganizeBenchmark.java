@@ -0,0 +1,81 @@
+package fileorganizer.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// A whole organize run (processDirectory: walk, classify, category folders, transfers, "Keep Both" on
+// collisions) from a generated tree into an empty destination, one run per measurement.
+//
+// depth = 0 gives a top-level run, anything else a deep one, over the same number of files; workers = 1
+// is the sequential transfer, the baseline for the parallel one. Every run gets a fresh destination;
+// moves also get a fresh source (copies reuse the trial's), generated outside the measured time. Temp
+// files go to java.io.tmpdir: point it at the drive to measure
+// (-jvmArgsAppend -Djava.io.tmpdir=/mnt/nas/tmp), as a move between drives is a copy.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class OrganizeBenchmark {
+
+    @Param({"copy", "move"})
+    public String action;
+
+    @Param({"0", "4"})
+    public int depth;
+
+    @Param({"2000"})
+    public int files;
+
+    @Param({"1K-32K"})
+    public String sizes;
+
+    @Param({"0.05"})
+    public double collisionRate;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    private Path root, source, destination;
+    private int run;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        root = Files.createTempDirectory("organizer-run");
+        source = root.resolve("source");
+        if (action.equals("copy")) generate();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpRun() throws IOException {
+        if (action.equals("move")) {
+            TreeGenerator.deleteTree(source);
+            generate();
+        }
+        destination = root.resolve("destination-" + run++);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownRun() throws IOException {
+        TreeGenerator.deleteTree(destination);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        TreeGenerator.deleteTree(root);
+    }
+
+    @Benchmark
+    public void processDirectory() {
+        App.organize(source.toString(), destination.toString(), action, depth > 0, workers);
+    }
+
+    private void generate() throws IOException {
+        TreeGenerator.generate(source, new TreeGenerator.Spec(files, depth, TreeGenerator.Sizes.parse(sizes), collisionRate, 42));
+    }
+}
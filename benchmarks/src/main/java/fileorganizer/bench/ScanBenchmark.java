@@ -0,0 +1,67 @@
+package fileorganizer.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// scanExtensionsByCategory (what the GUI runs when a source folder is picked) over a generated tree of
+// empty files: walk + classify, no file content. depth = 0 is a top-level scan, anything else a deep scan.
+// The tree stays the same for the whole trial, so after the first pass it is served from the OS caches.
+// legacyListFiles is the baseline: the pre-NIO scanner, one listFiles() plus an isFile() per child.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Param({"20000"})
+    public int files;
+
+    @Param({"0", "6"})
+    public int depth;
+
+    private Path root;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("organizer-scan");
+        TreeGenerator.generate(root, new TreeGenerator.Spec(files, depth, TreeGenerator.Sizes.parse("0"), 0, 42));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        TreeGenerator.deleteTree(root);
+    }
+
+    @Benchmark
+    public Map<String, Set<String>> scanExtensionsByCategory() {
+        return App.scanExtensionsByCategory(root.toString(), depth > 0);
+    }
+
+    @Benchmark
+    public Map<String, Set<String>> legacyListFiles() {
+        Map<String, Set<String>> byExt = new HashMap<>();
+        legacyScan(root.toFile(), depth > 0, byExt);
+        return byExt;
+    }
+
+    // Copy of the old scanDirectoryForExtensions: listFiles() + isFile() per child, recursion per folder
+    private static void legacyScan(File dir, boolean deepScan, Map<String, Set<String>> byExt) {
+        File[] children = dir.listFiles();
+        if (children == null) return;
+        for (File f : children) {
+            if (f.isFile()) byExt.computeIfAbsent(App.extOf(f.getName()), k -> new HashSet<>());
+            else if (deepScan) legacyScan(f, true, byExt);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package fileorganizer.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+// Synthetic source trees for the benchmarks, the same for the same Spec (everything comes from the seed).
+//
+// - files are spread over about files / FILES_PER_FOLDER folders, each the child of a random earlier one,
+//   never deeper than depth (0 = every file at the top level);
+// - names look like a real photo/download folder: camera names, documents, upper-case and missing
+//   extensions, a few hidden files, names no category knows;
+// - collisionRate of the files reuse the name of an earlier file in another folder, so a deep organize
+//   run has that share of name collisions in the category folders (top-level trees cannot have any);
+// - sizes follow the size distribution; file content is random and shared, written in blocks.
+public final class TreeGenerator {
+
+    static final int FILES_PER_FOLDER = 50;
+
+    // Extension mix of the generated names, the empty one included
+    private static final String[] EXTS = {"jpg", "jpg", "jpg", "JPG", "png", "gif", "heic", "pdf", "docx", "xlsx", "txt", "csv",
+            "mp3", "flac", "m4a", "mp4", "mov", "mkv", "zip", "iso", "xyz", "dat", ""};
+    private static final String[] STEMS = {"IMG_", "DSC", "Screenshot 2024-05-", "report-", "invoice_", "track", "VID_", "setup-", "notes"};
+
+    // files, folder depth, size distribution, share of colliding names (0..1), seed
+    public record Spec(int files, int depth, Sizes sizes, double collisionRate, long seed) {}
+
+    private TreeGenerator() {}
+
+    // Writes the tree under root (created if needed); returns the number of bytes written
+    public static long generate(Path root, Spec spec) throws IOException {
+        SplittableRandom random = new SplittableRandom(spec.seed());
+        List<Path> folders = folders(root, spec, random);
+
+        byte[] block = new byte[64 * 1024];
+        new Random(spec.seed()).nextBytes(block);
+
+        List<String> names = new ArrayList<>(spec.files());
+        List<Path> folderOf = new ArrayList<>(spec.files());
+        long bytes = 0;
+        for (int i = 0; i < spec.files(); i++) {
+            Path folder = folders.get(random.nextInt(folders.size()));
+            String name = null;
+
+            // Same name as an earlier file in another folder: collides once both land in one category folder
+            if (i > 0 && random.nextDouble() < spec.collisionRate()) {
+                int earlier = random.nextInt(i);
+                if (!folderOf.get(earlier).equals(folder)) name = names.get(earlier);
+            }
+            if (name == null) name = name(i, random);
+
+            long size = spec.sizes().next(random);
+            write(folder.resolve(name), size, block);
+            names.add(name);
+            folderOf.add(folder);
+            bytes += size;
+        }
+        return bytes;
+    }
+
+    // Names only, in the generated mix, for benchmarks that never touch the disk
+    public static String[] names(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) names[i] = name(i, random);
+        return names;
+    }
+
+    private static String name(int i, SplittableRandom random) {
+        String ext = EXTS[random.nextInt(EXTS.length)];
+        String stem = STEMS[random.nextInt(STEMS.length)] + i;
+        if (random.nextInt(100) == 0) stem = "." + stem;                  // hidden
+        return ext.isEmpty() ? stem : stem + "." + ext;
+    }
+
+    private static List<Path> folders(Path root, Spec spec, SplittableRandom random) throws IOException {
+        Files.createDirectories(root);
+        List<Path> folders = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        folders.add(root);
+        depths.add(0);
+        if (spec.depth() <= 0) return folders;
+
+        int count = Math.max(1, spec.files() / FILES_PER_FOLDER);
+        while (folders.size() < count) {
+            int parent = random.nextInt(folders.size());
+            if (depths.get(parent) >= spec.depth()) continue;
+            Path folder = folders.get(parent).resolve("folder" + folders.size());
+            Files.createDirectory(folder);
+            folders.add(folder);
+            depths.add(depths.get(parent) + 1);
+        }
+        return folders;
+    }
+
+    // One file of random content, written in 1 MB blocks, so multi-GB files do not need a multi-GB buffer
+    public static void writeFile(Path file, long size, long seed) throws IOException {
+        byte[] block = new byte[1024 * 1024];
+        new Random(seed).nextBytes(block);
+        write(file, size, block);
+    }
+
+    private static void write(Path file, long size, byte[] block) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += block.length) {
+                out.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+    }
+
+    public static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) return;
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    //============================================= SIZES ===========================================================
+
+    // File size distribution, written as a JMH parameter:
+    //   "0"              empty files (metadata-only benchmarks)
+    //   "16K"            every file the same size
+    //   "1K-64K"         uniform between the two
+    //   "lognormal:32K"  log-normal around a median (σ = 1.5, capped at 64 × the median): many small files,
+    //                    a few large ones, like a real downloads folder
+    public record Sizes(String kind, long a, long b) {
+
+        public static Sizes parse(String spec) {
+            String s = spec.trim().toUpperCase(Locale.ROOT);
+            if (s.startsWith("LOGNORMAL:")) return new Sizes("lognormal", bytes(s.substring(10)), 0);
+            int dash = s.indexOf('-');
+            if (dash > 0) {
+                long min = bytes(s.substring(0, dash)), max = bytes(s.substring(dash + 1));
+                if (max < min) throw new IllegalArgumentException("size range is upside down: " + spec);
+                return new Sizes("uniform", min, max);
+            }
+            return new Sizes("fixed", bytes(s), 0);
+        }
+
+        long next(SplittableRandom random) {
+            return switch (kind) {
+                case "uniform" -> a + (b > a ? random.nextLong(b - a + 1) : 0);
+                case "lognormal" -> {
+                    // Box-Muller
+                    double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+                    yield Math.min((long) (a * Math.exp(1.5 * gaussian)), a * 64);
+                }
+                default -> a;
+            };
+        }
+
+        private static long bytes(String text) {
+            long unit = 1;
+            if (text.endsWith("K")) unit = 1024;
+            else if (text.endsWith("M")) unit = 1024 * 1024;
+            String digits = unit == 1 ? text : text.substring(0, text.length() - 1);
+            try {
+                return Long.parseLong(digits.trim()) * unit;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("not a size: " + text);
+            }
+        }
+    }
+}
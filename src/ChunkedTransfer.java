@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+// Copy path for large files (typically the mkv/mp4/mov in Videos).
+//
+// - FileChannel.transferTo lets the kernel move the data (sendfile on Linux), in chunks,
+//   so a multi-GB file reports progress after every chunk instead of looking hung.
+// - The data goes to a hidden temp file next to the target that is renamed into place at the end,
+//   so a failed or interrupted copy never leaves a truncated file under the real name.
+// - Last-modified/access (and creation where the OS allows it) times are copied over.
+// - A copy can be stopped between chunks, so cancelling a run never waits for more than one chunk.
+//
+// Devices tells up front whether a move is a rename or a copy + delete across drives.
+public final class ChunkedTransfer {
+
+    // Files at least this big take the chunked path
+    public static final long LARGE_FILE_BYTES = 64L * 1024 * 1024;
+    public static final long CHUNK_BYTES = 16L * 1024 * 1024;
+
+    private static final String TEMP_SUFFIX = ".fo-partial";
+
+    private ChunkedTransfer() {}
+
+    // Copies source to target; onChunk receives the byte count of every chunk written.
+    // Without replace, an existing target fails with FileAlreadyExistsException (checked before any data is copied).
+    public static void copy(Path source, Path target, boolean replace, LongConsumer onChunk) throws IOException {
+        copy(source, target, replace, onChunk, () -> false);
+    }
+
+    // Same, but checks stopped before every chunk: once it is true the copy ends with InterruptedIOException,
+    // the temp file is removed and the target is left as it was
+    public static void copy(Path source, Path target, boolean replace, LongConsumer onChunk, BooleanSupplier stopped) throws IOException {
+        if (!replace && Files.exists(target, LinkOption.NOFOLLOW_LINKS)) throw new FileAlreadyExistsException(target.toString());
+
+        BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+        Path temp = target.resolveSibling("." + target.getFileName() + TEMP_SUFFIX);
+
+        try {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE,
+                         StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+                long size = in.size(), position = 0;
+                while (position < size) {
+                    if (stopped.getAsBoolean()) {
+                        InterruptedIOException e = new InterruptedIOException("Stopped after " + position + " of " + size + " bytes: " + source);
+                        e.bytesTransferred = (int) Math.min(position, Integer.MAX_VALUE);
+                        throw e;
+                    }
+                    // transferTo may move less than asked (e.g. sendfile caps one call at ~2 GB)
+                    long sent = in.transferTo(position, Math.min(CHUNK_BYTES, size - position), out);
+                    if (sent <= 0) throw new IOException("Source shrank while copying: " + source);
+                    position += sent;
+                    onChunk.accept(sent);
+                }
+            }
+
+            Files.getFileAttributeView(temp, BasicFileAttributeView.class)
+                    .setTimes(attrs.lastModifiedTime(), attrs.lastAccessTime(), attrs.creationTime());
+
+            if (!replace) {
+                Files.move(temp, target);
+            } else {
+                try {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temp);         // only still there when something failed
+        }
+    }
+
+    // Device of each folder, looked up once per folder for the whole run
+    public static final class Devices {
+        private final Map<Path, Object> ids = new ConcurrentHashMap<>();
+
+        // true when moving file into targetDir is a plain rename (same filesystem)
+        public boolean sameDevice(Path file, Path targetDir) {
+            Path sourceDir = file.toAbsolutePath().getParent();
+            Object a = idOf(sourceDir), b = idOf(targetDir.toAbsolutePath());
+            return a != null && a.equals(b);
+        }
+
+        private Object idOf(Path dir) {
+            Object id = ids.get(dir);
+            if (id != null) return id;
+            id = lookup(dir);
+            if (id != null) ids.put(dir, id);
+            return id;
+        }
+
+        // st_dev where the platform exposes it (Linux, macOS), otherwise the FileStore
+        private static Object lookup(Path dir) {
+            try {
+                return Files.getAttribute(dir, "unix:dev");
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                try {
+                    return Files.getFileStore(dir);
+                } catch (IOException ex) {
+                    return null;
+                }
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
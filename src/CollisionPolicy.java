@@ -0,0 +1,150 @@
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+// What to do when a file's target name is already taken, decided without asking anyone.
+//
+// A policy is a list of clauses, checked in order, the first one that holds decides:
+//
+//   skip-if-same,overwrite-if-newer,keep-both
+//
+// Actions: overwrite, keep-both, skip, cancel, and ask (the run's overwrite handler: the dialog in the GUI,
+// the --on-conflict answer in the CLI). "<action>-if-<condition>" only applies when the condition holds:
+//   newer / older      the source was modified after / before the target
+//   larger / smaller   the source is larger / smaller than the target
+//   same               same size and modification time
+// Times less than 2 s apart count as the same (FAT and some network drives round them). When no clause
+// holds, the handler is asked, as with "ask".
+//
+// Policies can differ per category; a category without one uses the default policy. Conditions only look at
+// what the run already has: the source's size and date from the scan, and the target's from the one stat
+// that tells the collision apart, so deciding costs no I/O of its own.
+public final class CollisionPolicy {
+
+    static final long SAME_TIME_MILLIS = 2000;
+
+    public enum Condition { ALWAYS, NEWER, OLDER, LARGER, SMALLER, SAME }
+
+    // decision == null: ask the handler
+    public record Clause(OverwriteDecision decision, Condition condition) {
+
+        boolean holds(long size, long lastModified, BasicFileAttributes target) {
+            if (condition == Condition.ALWAYS) return true;
+            if (target == null) return false;                   // nothing known about the target
+            long targetTime = target.lastModifiedTime().toMillis();
+            return switch (condition) {
+                case NEWER -> lastModified - targetTime >= SAME_TIME_MILLIS;
+                case OLDER -> targetTime - lastModified >= SAME_TIME_MILLIS;
+                case LARGER -> size > target.size();
+                case SMALLER -> size < target.size();
+                case SAME -> size == target.size() && Math.abs(lastModified - targetTime) < SAME_TIME_MILLIS;
+                case ALWAYS -> true;
+            };
+        }
+
+        @Override
+        public String toString() {
+            String action = decision == null ? "ask" : decision.name().toLowerCase(Locale.ROOT).replace('_', '-');
+            return condition == Condition.ALWAYS ? action : action + "-if-" + condition.name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    // Asks about every collision (what runs did before policies)
+    public static final CollisionPolicy ASK = new CollisionPolicy(null, Map.of());
+
+    private final Clause[] defaults;                        // null = not set, ask
+    private final Map<String, Clause[]> byCategory;
+
+    private CollisionPolicy(Clause[] defaults, Map<String, Clause[]> byCategory) {
+        this.defaults = defaults;
+        this.byCategory = byCategory;
+    }
+
+    //============================================= DECIDE ===========================================================
+
+    // The clause that decides a collision, or null to ask the handler.
+    // target: the attributes of the file in the way (null when they are not known, e.g. planned by the same run)
+    public Clause decide(String category, long size, long lastModified, BasicFileAttributes target) {
+        Clause[] clauses = byCategory.getOrDefault(category, defaults);
+        if (clauses == null) return null;
+        for (Clause clause : clauses) {
+            if (clause.holds(size, lastModified, target)) return clause.decision() == null ? null : clause;
+        }
+        return null;
+    }
+
+    // true when every collision is decided by the handler, so no target needs to be looked at
+    public boolean isAsk() {
+        return defaults == null && byCategory.isEmpty();
+    }
+
+    //============================================= BUILD ===========================================================
+
+    // Same policy with spec as the default (null keeps the current one)
+    public CollisionPolicy withDefault(String spec) {
+        return spec == null ? this : new CollisionPolicy(parse(spec), byCategory);
+    }
+
+    public CollisionPolicy withCategory(String category, String spec) {
+        Map<String, Clause[]> categories = new HashMap<>(byCategory);
+        categories.put(category, parse(spec));
+        return new CollisionPolicy(defaults, Map.copyOf(categories));
+    }
+
+    // This policy, with what it leaves open taken from fallback: its per-category policies, and its default
+    // when this one has none (so a category named in the rules file beats a default picked for the run)
+    public CollisionPolicy over(CollisionPolicy fallback) {
+        if (fallback.isAsk()) return this;
+        Map<String, Clause[]> categories = new HashMap<>(fallback.byCategory);
+        categories.putAll(byCategory);
+        return new CollisionPolicy(defaults != null ? defaults : fallback.defaults, Map.copyOf(categories));
+    }
+
+    // "skip-if-same,overwrite-if-newer,keep-both" (commas or spaces between clauses)
+    public static Clause[] parse(String spec) {
+        List<Clause> clauses = new ArrayList<>();
+        for (String token : spec.trim().split("[\\s,]+")) {
+            if (!token.isEmpty()) clauses.add(clause(token.toLowerCase(Locale.ROOT)));
+        }
+        if (clauses.isEmpty()) throw new IllegalArgumentException("empty collision policy");
+        return clauses.toArray(new Clause[0]);
+    }
+
+    private static Clause clause(String token) {
+        int at = token.indexOf("-if-");
+        String action = at < 0 ? token : token.substring(0, at);
+        Condition condition = Condition.ALWAYS;
+        if (at >= 0) {
+            try {
+                condition = Condition.valueOf(token.substring(at + 4).toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                condition = null;
+            }
+            if (condition == null || condition == Condition.ALWAYS) {
+                throw new IllegalArgumentException("unknown condition in '" + token + "' (expected newer, older, larger, smaller or same)");
+            }
+        }
+        OverwriteDecision decision = switch (action) {
+            case "overwrite" -> OverwriteDecision.OVERWRITE;
+            case "keep-both" -> OverwriteDecision.KEEP_BOTH;
+            case "skip" -> OverwriteDecision.SKIP;
+            case "cancel" -> OverwriteDecision.CANCEL;
+            case "ask" -> null;
+            default -> throw new IllegalArgumentException("unknown action in '" + token + "' (expected overwrite, keep-both, skip, cancel or ask)");
+        };
+        return new Clause(decision, condition);
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner text = new StringJoiner("; ");
+        text.add(defaults == null ? "ask" : join(defaults));
+        new TreeMap<>(byCategory).forEach((category, clauses) -> text.add(category + ": " + join(clauses)));
+        return text.toString();
+    }
+
+    private static String join(Clause[] clauses) {
+        StringJoiner text = new StringJoiner(",");
+        for (Clause clause : clauses) text.add(clause.toString());
+        return text.toString();
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Content comparison for duplicate detection, cheapest check first:
+//   1. size (already known from the scan / one stat of the target)
+//   2. SHA-256 of the first and last 64 KB
+//   3. SHA-256 of the whole file, streamed
+// Each digest is cached under path + size + mtime, and the cache can be kept on disk
+// (~/.fileorganizer/digests.bin), so files that did not change are never read again on later runs.
+// The cache file is written like the scan index: temp file + move, CRC32 trailer, rebuilt when unreadable.
+public class ContentDigests {
+
+    private static final int MAGIC = 0x46494447;        // "FIDG"
+    private static final int VERSION = 1;
+    private static final int PARTIAL_BYTES = 64 * 1024;
+    private static final int READ_BUFFER = 1024 * 1024;
+    public static final int DEFAULT_MAX_ENTRIES = 500_000;
+
+    // Digests of one version of a file; partial/full stay null until needed
+    private static final class Digests {
+        final long size, lastModified;
+        volatile byte[] partial, full;
+
+        Digests(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private final Path cacheFile;                // null = memory only
+    private final Map<String, Digests> cache;    // key: absolute path; least recently used dropped past maxEntries
+
+    public ContentDigests() {
+        this(null, DEFAULT_MAX_ENTRIES);
+    }
+
+    private ContentDigests(Path cacheFile, int maxEntries) {
+        this.cacheFile = cacheFile;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Digests> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    public static Path defaultLocation() {
+        return Path.of(System.getProperty("user.home"), ".fileorganizer", "digests.bin");
+    }
+
+    // Loads the cache file if it is readable; otherwise starts empty and rewrites it on save()
+    public static ContentDigests load(Path cacheFile, Consumer<String> log) {
+        ContentDigests digests = new ContentDigests(cacheFile, DEFAULT_MAX_ENTRIES);
+        if (!Files.exists(cacheFile)) return digests;
+
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(cacheFile), 1 << 16), crc))) {
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("not a digest cache");
+
+            Map<String, Digests> loaded = new LinkedHashMap<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                Digests d = new Digests(in.readLong(), in.readLong());
+                d.partial = readBytes(in);
+                d.full = readBytes(in);
+                loaded.put(path, d);
+            }
+
+            long expected = crc.getValue();
+            if (in.readLong() != expected) throw new IOException("checksum mismatch");
+
+            digests.cache.putAll(loaded);
+        } catch (IOException | RuntimeException e) {
+            log.accept("[WARNING] Digest cache is unreadable, rebuilding it: " + cacheFile + " → " + e.getMessage());
+            try {
+                Files.deleteIfExists(cacheFile);
+            } catch (IOException ignored) {
+                // rewritten on the next save anyway
+            }
+        }
+        return digests;
+    }
+
+    // true when both files have the same bytes; sourceSize comes from the scan, the target is stat'ed here
+    public boolean sameContent(Path source, long sourceSize, Path target) throws IOException {
+        BasicFileAttributes targetAttrs = Files.readAttributes(target, BasicFileAttributes.class);
+        if (!targetAttrs.isRegularFile() || targetAttrs.size() != sourceSize) return false;
+        if (sourceSize == 0) return true;
+
+        Digests a = entry(source, Files.readAttributes(source, BasicFileAttributes.class));
+        Digests b = entry(target, targetAttrs);
+
+        // Small files: the partial digest would read (almost) the whole file anyway
+        if (sourceSize > 2L * PARTIAL_BYTES && !Arrays.equals(partial(source, a), partial(target, b))) return false;
+        return Arrays.equals(full(source, a), full(target, b));
+    }
+
+    private Digests entry(Path file, BasicFileAttributes attrs) {
+        String key = file.toAbsolutePath().toString();
+        long size = attrs.size(), mtime = attrs.lastModifiedTime().toMillis();
+
+        synchronized (cache) {
+            Digests d = cache.get(key);
+            if (d == null || d.size != size || d.lastModified != mtime) {
+                d = new Digests(size, mtime);
+                cache.put(key, d);
+            }
+            return d;
+        }
+    }
+
+    private static byte[] partial(Path file, Digests d) throws IOException {
+        byte[] digest = d.partial;
+        if (digest != null) return digest;
+
+        MessageDigest md = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(PARTIAL_BYTES);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            readAt(ch, 0, buffer, md);
+            readAt(ch, Math.max(0, d.size - PARTIAL_BYTES), buffer, md);
+        }
+        return d.partial = md.digest();
+    }
+
+    private static byte[] full(Path file, Digests d) throws IOException {
+        byte[] digest = d.full;
+        if (digest != null) return digest;
+
+        MessageDigest md = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (ch.read(buffer) > 0) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+        }
+        return d.full = md.digest();
+    }
+
+    private static void readAt(FileChannel ch, long position, ByteBuffer buffer, MessageDigest md) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int n = ch.read(buffer, position + buffer.position());
+            if (n < 0) break;
+        }
+        buffer.flip();
+        md.update(buffer);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);         // SHA-256 is always available
+        }
+    }
+
+    // Writes the cache atomically; a no-op for a memory-only cache
+    public void save() throws IOException {
+        if (cacheFile == null) return;
+        Files.createDirectories(cacheFile.getParent());
+        Path tmp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+
+        List<Map.Entry<String, Digests>> entries;
+        synchronized (cache) {
+            entries = new ArrayList<>(cache.entrySet());
+        }
+
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16), crc))) {
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Digests> e : entries) {
+                Digests d = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(d.size);
+                out.writeLong(d.lastModified);
+                writeBytes(out, d.partial);
+                writeBytes(out, d.full);
+            }
+            out.writeLong(crc.getValue());      // everything written so far
+        }
+
+        try {
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readUnsignedByte();
+        if (length == 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeByte(bytes == null ? 0 : bytes.length);
+        if (bytes != null) out.write(bytes);
+    }
+}
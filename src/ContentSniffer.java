@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Tells a file's type from its first bytes ("magic numbers"), for files whose name does not:
+// no extension, an extension no category knows, or one that is often wrong (SUSPICIOUS).
+//
+// Only HEAD_BYTES are read, into direct buffers that are pooled and reused by the workers,
+// so sniffing costs one small read per file and no garbage. The result is the extension the
+// content belongs to (e.g. "jpg"), which is then classified like any other file name.
+public class ContentSniffer {
+
+    // Enough for every signature below, including the first entry names of a zip (Office, EPUB)
+    static final int HEAD_BYTES = 2048;
+
+    // Extensions that are commonly given to files of another type (renamed downloads, exports, ...)
+    public static final Set<String> SUSPICIOUS = Set.of("txt", "dat", "bin", "tmp", "file", "download");
+
+    private final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+
+    // Extension matching the content, or null when it is not recognized (or the file cannot be read)
+    public String sniff(Path file) {
+        ByteBuffer head = pool.poll();
+        if (head == null) head = ByteBuffer.allocateDirect(HEAD_BYTES);
+        head.clear();
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (head.hasRemaining() && ch.read(head) > 0) {
+                // keep reading: a channel may return fewer bytes than asked
+            }
+            head.flip();
+            return detect(head);
+        } catch (IOException e) {
+            return null;            // the transfer reports unreadable files
+        } finally {
+            pool.offer(head);
+        }
+    }
+
+    static String detect(ByteBuffer b) {
+        int n = b.limit();
+        if (n < 4) return null;
+
+        if (at(b, 0, 0xFF, 0xD8, 0xFF)) return "jpg";
+        if (at(b, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) return "png";
+        if (text(b, 0, "GIF87a") || text(b, 0, "GIF89a")) return "gif";
+        if (text(b, 0, "%PDF-")) return "pdf";
+        if (at(b, 0, 0x1A, 0x45, 0xDF, 0xA3)) return "mkv";              // Matroska / WebM (EBML)
+        if (text(b, 0, "fLaC")) return "flac";
+        if (text(b, 0, "OggS")) return "ogg";
+        if (text(b, 0, "RIFF") && n >= 12) {
+            if (text(b, 8, "WAVE")) return "wav";
+            if (text(b, 8, "AVI ")) return "avi";
+        }
+        if (text(b, 4, "ftyp") && n >= 12) {                              // ISO base media: brand at 8
+            if (text(b, 8, "qt  ")) return "mov";
+            if (text(b, 8, "M4A ")) return "m4a";
+            return "mp4";
+        }
+        if (text(b, 0, "ID3")) return "mp3";
+        if ((b.get(0) & 0xFF) == 0xFF && (b.get(1) & 0xE6) == 0xE2) return "mp3";  // MPEG audio frame, layer III
+        if (at(b, 0, 'P', 'K', 0x03, 0x04)) return zipType(b);
+        return null;
+    }
+
+    // OOXML and EPUB are zips; their first entries give them away
+    private static String zipType(ByteBuffer b) {
+        if (b.limit() >= 58 && text(b, 30, "mimetypeapplication/epub+zip")) return "epub";
+        String head = StandardCharsets.ISO_8859_1.decode(b.duplicate()).toString();
+        if (head.contains("word/")) return "docx";
+        if (head.contains("xl/")) return "xlsx";
+        if (head.contains("ppt/")) return "pptx";
+        return "zip";
+    }
+
+    private static boolean at(ByteBuffer b, int offset, int... bytes) {
+        if (offset + bytes.length > b.limit()) return false;
+        for (int i = 0; i < bytes.length; i++) {
+            if ((b.get(offset + i) & 0xFF) != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean text(ByteBuffer b, int offset, String ascii) {
+        if (offset + ascii.length() > b.limit()) return false;
+        for (int i = 0; i < ascii.length(); i++) {
+            if (b.get(offset + i) != (byte) ascii.charAt(i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// Folders inside the destination that a run has made sure exist (category folders and their date
+// subfolders). Each one is checked, and created if needed, once per run instead of once per file;
+// safe to use from the walker and the workers at the same time.
+//
+// On a network drive every exists()/mkdirs() is a round trip, so:
+// - a folder is looked up in memory after its first use;
+// - parents already seen by the run (Images for Images/2024/05) are not checked again;
+// - when the scan is known up front, createAll() makes every folder before the first transfer.
+public class DestinationFolders {
+
+    private final File destinationDir;
+    private final RunHistory.Writer history;         // null = run is not recorded
+    private final Consumer<String> log;
+    private final RunMetrics metrics;                // null = not timed
+    private final Map<String, File> ready = new ConcurrentHashMap<>();
+    private final Set<File> existing = ConcurrentHashMap.newKeySet();      // every level known to be on disk
+
+    public DestinationFolders(File destinationDir, RunHistory.Writer history, RunMetrics metrics, Consumer<String> log) {
+        this.destinationDir = destinationDir;
+        this.history = history;
+        this.metrics = metrics;
+        this.log = log;
+    }
+
+    // The folder (relative to the destination, e.g. "Images/2024/05"), created on first use
+    public File get(String folder) {
+        File dir = ready.get(folder);
+        return dir != null ? dir : ready.computeIfAbsent(folder, this::create);
+    }
+
+    // Creates the folders a run already knows it needs, before any file is handed to the workers
+    public void createAll(Collection<String> folders) {
+        for (String folder : folders) get(folder);
+    }
+
+    // Called once per folder; other threads asking for the same folder wait for it
+    private File create(String folder) {
+        File dir = new File(destinationDir, folder);
+
+        // Levels the run has not seen yet, deepest first (no disk access)
+        List<File> unknown = new ArrayList<>();
+        for (File d = dir; d != null && !d.equals(destinationDir) && !existing.contains(d); d = d.getParentFile()) unknown.add(d);
+        if (unknown.isEmpty()) return dir;
+
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return create(folder, dir, unknown);
+        } finally {
+            if (metrics != null) metrics.stage(RunMetrics.Stage.FOLDERS, System.nanoTime() - start);
+        }
+    }
+
+    private File create(String folder, File dir, List<File> unknown) {
+        // Already there (a folder from an earlier run): so are its parents
+        if (dir.isDirectory()) {
+            existing.addAll(unknown);
+            return dir;
+        }
+
+        // Top-down, one mkdir per missing level; a level another worker just made is simply there
+        boolean created = false;
+        for (int i = unknown.size() - 1; i >= 0; i--) {
+            File level = unknown.get(i);
+            RunMetrics.FolderEvent event = RunMetrics.folderEvent();
+            if (level.mkdir()) {
+                created = true;
+                RunMetrics.commit(event, level);
+                // Every level the run created goes into the history, so a rollback removes all of them
+                record(level);
+            } else if (!level.isDirectory()) {
+                log.accept("[WARNING] Could not create category folder: " + folder);
+                return dir;
+            }
+            existing.add(level);
+        }
+        if (created) log.accept("[INFO] Created category folder: " + folder);
+        return dir;
+    }
+
+    private void record(File dir) {
+        if (history == null) return;
+        try {
+            history.folder(dir.toPath());
+        } catch (IOException e) {
+            log.accept("[WARNING] Could not record folder in run history: " + dir + " → " + e.getMessage());
+        }
+    }
+}
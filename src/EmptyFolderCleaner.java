@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Deletes the empty folders below a source folder after a run, in one bottom-up pass.
+//
+// A task lists its folder once, forks a task per subfolder that may go, and after joining them knows how
+// many entries are left (files, other folders, subfolders that stayed) without listing the folder again;
+// a folder left with none is deleted. Subtrees are cleaned in parallel on a ForkJoinPool, which also keeps
+// several listings in flight on a network drive.
+//
+// Which subfolders may go:
+// - forScan: the folders a scan saw (every level for a deep scan, the direct subfolders for a top-level one).
+//   Entries are told apart by membership, so nothing is stat'ed; a folder created since the scan is
+//   simply an entry that keeps its parent.
+// - forEmptied: only the folders a move run took files out of, and their parents. Folders the run never
+//   touched (empty before, or full) are not even listed, so the cost follows the run, not the tree.
+// - forTree: no scan at hand; every entry is stat'ed to find the subfolders (symlinks are never followed).
+//
+// cancel() stops the pass between folders: folders already deleted stay deleted, the rest are kept.
+public class EmptyFolderCleaner {
+
+    public record Result(long checked, long deleted, boolean cancelled) {}
+
+    private final Path root;
+    private final Set<Path> candidates;          // null = find subfolders on disk
+    private final boolean deepScan;
+    private final int parallelism;
+    private final Consumer<String> log;
+
+    private final LongAdder checked = new LongAdder(), deleted = new LongAdder();
+    private volatile boolean cancelled;
+
+    private EmptyFolderCleaner(Path root, Set<Path> candidates, boolean deepScan, int parallelism, Consumer<String> log) {
+        this.root = root.toAbsolutePath().normalize();
+        this.candidates = candidates;
+        this.deepScan = deepScan;
+        this.parallelism = Math.max(1, Math.min(parallelism, OrganizeOptions.MAX_PARALLELISM));
+        this.log = log;
+    }
+
+    public static EmptyFolderCleaner forScan(ScanManifest manifest, int parallelism, Consumer<String> log) {
+        return new EmptyFolderCleaner(manifest.getRoot(), new HashSet<>(manifest.getDirectories()), manifest.isDeepScan(), parallelism, log);
+    }
+
+    // movedFrom: the folders files were moved out of (OrganizeOptions.setMovedFrom), in any form
+    public static EmptyFolderCleaner forEmptied(Path root, Collection<Path> movedFrom, int parallelism, Consumer<String> log) {
+        Path top = root.toAbsolutePath().normalize();
+        Set<Path> candidates = new HashSet<>();
+        for (Path folder : movedFrom) {
+            // The folder and every parent up to (not including) the source folder can end up empty
+            for (Path p = folder.toAbsolutePath().normalize(); p != null && !p.equals(top) && p.startsWith(top); p = p.getParent()) {
+                if (!candidates.add(p)) break;          // the rest of the chain is in already
+            }
+        }
+        return new EmptyFolderCleaner(top, candidates, true, parallelism, log);
+    }
+
+    public static EmptyFolderCleaner forTree(Path root, boolean deepScan, int parallelism, Consumer<String> log) {
+        return new EmptyFolderCleaner(root, null, deepScan, parallelism, log);
+    }
+
+    //============================================= RUN ===========================================================
+
+    // Blocks until the pass is done (or cancelled); the root itself is never deleted
+    public Result run() {
+        if (candidates != null && candidates.isEmpty()) return new Result(0, 0, cancelled);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new Clean(root, 0));
+        } finally {
+            pool.shutdown();
+        }
+        return new Result(checked.sum(), deleted.sum(), cancelled);
+    }
+
+    public void cancel() { cancelled = true; }
+
+    public boolean isCancelled() { return cancelled; }
+
+    // Progress: folders listed so far, and how many of them were deleted
+    public long getChecked() { return checked.sum(); }
+    public long getDeleted() { return deleted.sum(); }
+
+    // Folders that may be listed in total; -1 when they are only found on the way (forTree)
+    public long getTotal() { return candidates == null ? -1 : candidates.size() + 1; }
+
+    // True when the folder is empty at the end (and, below the root, deleted)
+    private final class Clean extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1L;
+        private final Path dir;
+        private final int depth;
+
+        Clean(Path dir, int depth) {
+            this.dir = dir;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (cancelled) return false;
+
+            int left = 0;
+            List<Clean> subfolders = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (mayGo(entry)) subfolders.add(new Clean(entry, depth + 1));
+                    else left++;
+                }
+            } catch (NoSuchFileException e) {
+                return true;                            // gone already: does not keep the parent either
+            } catch (IOException | DirectoryIteratorException e) {
+                log.accept("[WARNING] Could not read: " + dir + " → " + e.getMessage());
+                return false;
+            }
+            checked.increment();
+
+            invokeAll(subfolders);
+            for (Clean subfolder : subfolders) {
+                if (!subfolder.join()) left++;
+            }
+            if (left > 0 || cancelled || depth == 0) return left == 0;
+            return delete();
+        }
+
+        // A subfolder this pass may remove (anything else counts as an entry that keeps dir)
+        private boolean mayGo(Path entry) {
+            if (candidates != null) return candidates.contains(entry);
+            if (!deepScan && depth > 0) return false;           // top-level: only the direct subfolders go
+            try {
+                return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        private boolean delete() {
+            try {
+                // A scan follows links; the link would go, not the folder it points to
+                if (Files.isSymbolicLink(dir)) return false;
+                Files.delete(dir);
+                deleted.increment();
+                log.accept("[INFO] Deleted empty folder: " + dir);
+                return true;
+            } catch (NoSuchFileException e) {
+                return true;
+            } catch (DirectoryNotEmptyException e) {
+                return false;                           // something arrived since the listing
+            } catch (IOException e) {
+                log.accept("[WARNING] Could not delete: " + dir + " → " + e.getMessage());
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Set;
+
+// Capture date of a photo from its EXIF header, without an imaging library.
+//
+// JPEG: the marker segments are walked from the start of the file and only the APP1 "Exif" segment is read;
+// the walk stops there, or at the start of the image data. TIFF: the file itself is the EXIF structure.
+// Inside, DateTimeOriginal (0x9003) in the Exif IFD is used, falling back to DateTimeDigitized and then to
+// the IFD0 DateTime. Only the header is read, never the image data.
+public final class ExifDate {
+
+    // Extensions that can carry EXIF this reader understands
+    public static final Set<String> EXTENSIONS = Set.of("jpg", "jpeg", "tif", "tiff");
+
+    private static final int MAX_SEGMENTS = 16;             // APP1 comes first in practice; give up after this many
+    private static final int MAX_EXIF_BYTES = 64 * 1024;    // a JPEG segment is at most 64 KB anyway
+
+    private static final int TAG_DATE_TIME = 0x0132, TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATE_ORIGINAL = 0x9003, TAG_DATE_DIGITIZED = 0x9004;
+
+    private ExifDate() {}
+
+    // Epoch millis of the capture date (in the local time zone, as EXIF has none), or -1 when there is none
+    public static long captureTime(Path file) {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = read(ch, 0, 4);
+            if (head == null) return -1;
+
+            int b0 = head.get(0) & 0xFF, b1 = head.get(1) & 0xFF;
+            if (b0 == 0xFF && b1 == 0xD8) return fromJpeg(ch);
+            if ((b0 == 'I' && b1 == 'I') || (b0 == 'M' && b1 == 'M')) {
+                ByteBuffer tiff = read(ch, 0, (int) Math.min(ch.size(), MAX_EXIF_BYTES));
+                return tiff != null ? fromTiff(tiff) : -1;
+            }
+        } catch (IOException | RuntimeException e) {
+            // unreadable or malformed header: no date
+        }
+        return -1;
+    }
+
+    private static long fromJpeg(FileChannel ch) throws IOException {
+        long position = 2;
+        for (int i = 0; i < MAX_SEGMENTS; i++) {
+            ByteBuffer marker = read(ch, position, 4);
+            if (marker == null || (marker.get(0) & 0xFF) != 0xFF) return -1;
+
+            int type = marker.get(1) & 0xFF;
+            int length = marker.getShort(2) & 0xFFFF;           // includes the two length bytes
+            if (type == 0xDA || type == 0xD9) return -1;        // image data / end: no EXIF before it
+
+            if (type == 0xE1 && length > 8) {
+                ByteBuffer segment = read(ch, position + 4, Math.min(length - 2, MAX_EXIF_BYTES));
+                if (segment != null && segment.get(0) == 'E' && segment.get(1) == 'x' && segment.get(2) == 'i'
+                        && segment.get(3) == 'f' && segment.get(4) == 0 && segment.get(5) == 0) {
+                    return fromTiff(segment.position(6).slice());
+                }
+            }
+            position += 2 + length;
+        }
+        return -1;
+    }
+
+    // TIFF structure: byte order, then the offset of IFD0; all offsets are relative to its start
+    private static long fromTiff(ByteBuffer tiff) {
+        if (tiff.limit() < 8) return -1;
+        tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+
+        int ifd0 = tiff.getInt(4);
+        int exifIfd = (int) entry(tiff, ifd0, TAG_EXIF_IFD);
+        if (exifIfd > 0) {
+            long original = dateAt(tiff, entry(tiff, exifIfd, TAG_DATE_ORIGINAL));
+            if (original > 0) return original;
+            long digitized = dateAt(tiff, entry(tiff, exifIfd, TAG_DATE_DIGITIZED));
+            if (digitized > 0) return digitized;
+        }
+        return dateAt(tiff, entry(tiff, ifd0, TAG_DATE_TIME));
+    }
+
+    // Value (a LONG) or value offset (an ASCII string longer than 4 bytes) of a tag in an IFD; -1 when absent
+    private static long entry(ByteBuffer tiff, int ifd, int tag) {
+        if (ifd <= 0 || ifd + 2 > tiff.limit()) return -1;
+        int count = tiff.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            int at = ifd + 2 + i * 12;
+            if (at + 12 > tiff.limit()) return -1;
+            if ((tiff.getShort(at) & 0xFFFF) == tag) return tiff.getInt(at + 8) & 0xFFFFFFFFL;
+        }
+        return -1;
+    }
+
+    // "YYYY:MM:DD HH:MM:SS"
+    private static long dateAt(ByteBuffer tiff, long offset) {
+        if (offset <= 0 || offset + 19 > tiff.limit()) return -1;
+        char[] text = new char[19];
+        for (int i = 0; i < 19; i++) text[i] = (char) (tiff.get((int) offset + i) & 0xFF);
+        String s = new String(text);
+        if (s.startsWith("0000")) return -1;                     // cameras without a clock write zeros
+        try {
+            LocalDateTime taken = LocalDateTime.of(Integer.parseInt(s.substring(0, 4)), Integer.parseInt(s.substring(5, 7)),
+                    Integer.parseInt(s.substring(8, 10)), Integer.parseInt(s.substring(11, 13)),
+                    Integer.parseInt(s.substring(14, 16)), Integer.parseInt(s.substring(17, 19)));
+            return taken.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (NumberFormatException | DateTimeException e) {
+            return -1;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel ch, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (ch.read(buffer, position + buffer.position()) < 0) break;
+        }
+        return buffer.position() == length ? buffer.flip() : null;
+    }
+}
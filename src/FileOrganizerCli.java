@@ -0,0 +1,766 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+// Headless entry point: runs FileOrganizerLogic without a display (cron, ingest servers).
+// Only touches logic classes, so no Swing/AWT class is ever loaded.
+//
+//   java -cp FileOrganizer.jar FileOrganizerCli --source DIR --dest DIR [options]
+//
+// Log lines and periodic progress are written to stdout, one JSON object per line (or plain text with --format text).
+// Exit codes: 0 = success, 1 = finished with errors, 2 = invalid arguments, 3 = cancelled by the overwrite policy.
+public class FileOrganizerCli {
+
+    static final int EXIT_OK = 0;
+    static final int EXIT_ERRORS = 1;
+    static final int EXIT_USAGE = 2;
+    static final int EXIT_CANCELLED = 3;
+
+    // How long Ctrl+C waits for the file being copied by watch mode (large files stop after the current chunk)
+    private static final long WATCH_STOP_SECONDS = 10;
+
+    private static final String USAGE = """
+            Usage: java -cp FileOrganizer.jar FileOrganizerCli --source DIR --dest DIR [options]
+                   java -cp FileOrganizer.jar FileOrganizerCli --execute-plan FILE [--workers N] [--on-conflict ...]
+                   java -cp FileOrganizer.jar FileOrganizerCli --resume FILE|latest [--workers N] [--on-conflict ...]
+                   java -cp FileOrganizer.jar FileOrganizerCli --undo FILE|latest [--workers N]
+
+              --action move|copy                 default: move
+              --deep                             include subfolders (default: top-level only)
+              --categories Images,Documents,...  organize only these categories (default: all file types)
+              --extensions CATEGORY=ext,ext      limit a category to these extensions (repeatable)
+              --rules FILE                       categories, rules and folder templates (default:
+                                                 ~/.fileorganizer/rules.conf when it exists)
+              --on-conflict POLICY               what to do when the target exists: overwrite, keep-both, skip,
+                                                 cancel, or clauses tried in order, e.g.
+                                                 skip-if-same,overwrite-if-newer,keep-both (conditions: newer,
+                                                 older, larger, smaller, same); default and fallback: skip
+              --on-conflict CATEGORY=POLICY      a different policy for one category (repeatable)
+              --workers N                        files transferred at the same time (default: 4)
+              --max-rate RATE                    limit the transfers to RATE bytes per second in total,
+                                                 e.g. 20MB (KB, MB, GB); default: no limit
+              --max-files N                      start at most N file transfers per second (default: no limit)
+              --limits-control                   change the limits while the run goes: type "rate 5MB",
+                                                 "files 20" or "rate off" + Enter (stdin), or use the JMX
+                                                 MBean fileorganizer:type=Throttle
+              --skip-identical                   skip files whose content is already at the destination
+                                                 (same bytes under the same name or a "name (n)" copy)
+              --sniff                            classify files without a known extension (or with a
+                                                 misleading one such as .txt) by their first bytes
+              --date-folders year|month          sort each category into year (Images/2024) or month
+                                                 (Images/2024/05) folders by the files' dates
+              --no-exif                          date photos by last-modified time, not EXIF capture date
+              --delete-empty all|emptied         after the run, delete empty folders in the source (all of
+                                                 them, or with --action move only those the run emptied)
+              --digest-cache FILE                where to keep file digests between runs
+                                                 (default: ~/.fileorganizer/digests.bin)
+              --incremental                      only process files that are new or changed since the last
+                                                 successful --incremental run (uses a saved scan index)
+              --index FILE                       where to keep the scan index (default: ~/.fileorganizer/index/)
+              --watch                            keep running and organize new files as they arrive
+              --settle-ms N                      with --watch: how long a file must stay unchanged (default: 2000)
+              --plan FILE                        dry run: write what would happen to FILE, touch nothing else
+              --execute-plan FILE                carry out a plan written by --plan (source, destination and
+                                                 action come from the plan; --on-conflict applies to names
+                                                 taken since it was made)
+              --journal FILE                     where to keep the run journal (default: ~/.fileorganizer/journal/)
+              --no-journal                       do not journal the run (it cannot be resumed if interrupted)
+              --resume FILE|latest               finish a run that was interrupted, from its journal
+              --no-history                       do not record the run (it cannot be rolled back)
+              --undo FILE|latest                 roll back a run from its history (~/.fileorganizer/history/):
+                                                 moved files go back, copies and created folders are removed
+              --metrics                          time each stage of the run (listing, classification, folders,
+                                                 collisions, transfer) and log a summary at the end; also
+                                                 readable over JMX as fileorganizer:type=RunMetrics
+              --format json|text                 progress output (default: json)
+              --log-level detail|info|warning|error
+                                                 lowest level printed (default: detail = one line per file)
+              --log-file FILE                    also write the full log to FILE (in the background)
+              --progress-every N                 print a progress line every N seconds while files are
+                                                 being handled (default: 1; 0 = off, which also skips the
+                                                 up-front scan that gives the totals and ETA)
+              --help
+            """;
+
+    public static void main(String[] args) {
+        // UTF-8 regardless of the platform default, so the JSON stays valid for non-ASCII file names
+        PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+        PrintStream err = new PrintStream(new FileOutputStream(FileDescriptor.err), true, StandardCharsets.UTF_8);
+        System.exit(run(args, out, err));
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Options opts;
+        try {
+            opts = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println("[ERROR] " + e.getMessage());
+            err.print(USAGE);
+            return EXIT_USAGE;
+        }
+
+        if (opts.help) {
+            out.print(USAGE);
+            return EXIT_OK;
+        }
+
+        Path rulesFile = opts.rulesFile != null ? Path.of(opts.rulesFile) : OrganizeRules.defaultLocation();
+        if (opts.rulesFile != null || Files.exists(rulesFile)) {
+            try {
+                OrganizeRules.setActive(OrganizeRules.load(rulesFile));
+            } catch (IOException e) {
+                err.println("[ERROR] Could not read rules: " + e.getMessage());
+                return EXIT_USAGE;
+            }
+        }
+        try {
+            opts.resolveCategories(OrganizeRules.active());
+        } catch (IllegalArgumentException e) {
+            err.println("[ERROR] " + e.getMessage());
+            return EXIT_USAGE;
+        }
+
+        if ("latest".equals(opts.resume)) {
+            List<Path> leftOver = RunJournal.leftOver();
+            if (leftOver.isEmpty()) {
+                err.println("[ERROR] No interrupted run to resume in " + RunJournal.journalFolder());
+                return EXIT_USAGE;
+            }
+            opts.resume = leftOver.get(leftOver.size() - 1).toString();
+        }
+        if (opts.resume != null) {
+            try {
+                RunJournal.Header header = RunJournal.replay(Path.of(opts.resume)).header();
+                opts.source = header.source().toString();
+                opts.destination = header.destination().toString();
+                opts.action = header.action();
+            } catch (IOException e) {
+                err.println("[ERROR] Could not read journal: " + opts.resume + " → " + e.getMessage());
+                return EXIT_USAGE;
+            }
+        }
+
+        if ("latest".equals(opts.undo)) {
+            List<Path> history = RunHistory.list();
+            if (history.isEmpty()) {
+                err.println("[ERROR] No run to roll back in " + RunHistory.historyFolder());
+                return EXIT_USAGE;
+            }
+            opts.undo = history.get(history.size() - 1).toString();
+        }
+        if (opts.undo != null) {
+            try {
+                RunHistory.Header header = RunHistory.readHeader(Path.of(opts.undo));
+                opts.source = header.source().toString();
+                opts.destination = header.destination().toString();
+                opts.action = header.action();
+            } catch (IOException e) {
+                err.println("[ERROR] Could not read run history: " + opts.undo + " → " + e.getMessage());
+                return EXIT_USAGE;
+            }
+        }
+
+        if (opts.executePlan != null) {
+            try {
+                RunPlan.Header header = RunPlan.readHeader(Path.of(opts.executePlan));
+                opts.source = header.source().toString();
+                opts.destination = header.destination().toString();
+                opts.action = header.action();
+            } catch (IOException e) {
+                err.println("[ERROR] Could not read plan: " + opts.executePlan + " → " + e.getMessage());
+                return EXIT_USAGE;
+            }
+        }
+
+        File sourceDir = new File(opts.source);
+        File destinationDir = new File(opts.destination);
+        if (!sourceDir.isDirectory() && opts.undo == null) {     // a rollback recreates the folders it needs
+            err.println("[ERROR] Source folder does not exist or is not a directory: " + sourceDir.getAbsolutePath());
+            return EXIT_USAGE;
+        }
+        if (destinationDir.getAbsoluteFile().toPath().normalize().startsWith(sourceDir.getAbsoluteFile().toPath().normalize())) {
+            err.println("[ERROR] The destination folder cannot be the source folder or inside it.");
+            return EXIT_USAGE;
+        }
+
+        LogFileSink logFile = null;
+        if (opts.logFile != null) {
+            try {
+                logFile = new LogFileSink(Path.of(opts.logFile));
+            } catch (IOException e) {
+                err.println("[ERROR] Could not create log file: " + opts.logFile + " → " + e.getMessage());
+                return EXIT_USAGE;
+            }
+        }
+
+        try (LogFileSink sink = logFile) {
+            return organize(opts, new RunReporter(out, opts.json, opts.logLevel, sink), err);
+        } catch (IOException e) {
+            err.println("[WARNING] Log file is incomplete: " + opts.logFile + " → " + e.getMessage());
+            return EXIT_ERRORS;
+        }
+    }
+
+    private static int organize(Options opts, RunReporter reporter, PrintStream err) {
+        OrganizeOptions options = new OrganizeOptions(opts.workers);
+        options.setContentSniffing(opts.sniff);
+        options.setDateFolders(opts.dateFolders);
+        options.setExifDates(opts.exif);
+        options.setCollisionPolicy(opts.collisions);
+        options.setMetrics(opts.metrics);
+        // Runs without limits (or a way to set them later) have no throttle at all
+        TransferThrottle throttle = null;
+        if (opts.maxRate > 0 || opts.maxFiles > 0 || opts.limitsControl) {
+            throttle = new TransferThrottle();
+            throttle.setBytesPerSecond(opts.maxRate);
+            throttle.setFilesPerSecond(opts.maxFiles);
+            options.setThrottle(throttle);
+        }
+        RunProgress progress = new RunProgress();
+        options.setProgress(progress);
+        reporter.progress = progress;
+        // Cancelling (the collision policy) goes through the context; watch mode gives each batch its own
+        RunContext context = new RunContext();
+        options.setRunContext(context);
+        reporter.context = context;
+        long start = System.nanoTime();
+
+        // Non-interactive: the same decision for every collision, applied to all
+        OverwriteDecision policy = opts.onConflict;
+        BiFunction<File, boolean[], OverwriteDecision> overwriteHandler = (target, applyToAll) -> {
+            applyToAll[0] = policy != OverwriteDecision.CANCEL;
+            return policy;
+        };
+
+        if (opts.planFile != null) return plan(opts, options, reporter, start);
+
+        if (throttle != null && throttle.isLimited()) reporter.accept("[INFO] Transfer limit: " + throttle);
+        if (throttle != null && opts.limitsControl && opts.undo == null) {
+            throttle.publish(reporter);
+            listenForLimits(throttle, reporter);
+        }
+
+        // Polled from its own thread, so the workers never wait for the output
+        ScheduledExecutorService ticker = null;
+        if (opts.progressSeconds > 0) {
+            ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "progress-report");
+                t.setDaemon(true);
+                return t;
+            });
+            ticker.scheduleAtFixedRate(reporter::progressTick, opts.progressSeconds, opts.progressSeconds, TimeUnit.SECONDS);
+        }
+
+        ContentDigests digests = null;
+        if (opts.skipIdentical) {
+            digests = ContentDigests.load(opts.digestCache != null ? Path.of(opts.digestCache) : ContentDigests.defaultLocation(), reporter);
+            options.setContentDigests(digests);
+        }
+
+        try {
+            if (opts.watch) return watch(opts, options, reporter, overwriteHandler, err);
+            if (opts.undo != null) return undo(opts, options, reporter, start);
+            if (opts.history) options.setHistoryFile(RunHistory.newLocation());
+            if (opts.executePlan != null) return executePlan(opts, options, reporter, overwriteHandler, start);
+            if (opts.resume != null) return resume(opts, options, reporter, overwriteHandler, start);
+            if (opts.journal) options.setJournalFile(opts.journalFile != null ? Path.of(opts.journalFile) : RunJournal.newLocation());
+            return organizeOnce(opts, options, reporter, overwriteHandler, start);
+        } finally {
+            if (ticker != null) ticker.shutdownNow();
+            if (digests != null) {
+                try {
+                    digests.save();
+                } catch (IOException e) {
+                    reporter.accept("[WARNING] Could not save digest cache: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static int organizeOnce(Options opts, OrganizeOptions options, RunReporter reporter,
+                                    BiFunction<File, boolean[], OverwriteDecision> overwriteHandler, long start) {
+
+        ScanIndex index = null;
+        if (opts.incremental) {
+            Path indexFile = opts.indexFile != null ? Path.of(opts.indexFile) : ScanIndex.defaultLocation(opts.source, opts.deepScan);
+            index = ScanIndex.load(indexFile, opts.source, opts.deepScan, reporter);
+
+            ScanIndex.Reconciled scan = index.reconcile(reporter);
+            reporter.accept("[INFO] Scan index: " + scan.foldersListed() + " folders listed, " + scan.foldersReused()
+                    + " unchanged; " + scan.changed().getFiles().size() + " of " + scan.all().getFiles().size() + " files new or changed");
+            options.setScanManifest(scan.changed());
+        } else if (opts.progressSeconds > 0) {
+            // Scan first so the progress lines carry real totals and an ETA
+            options.setScanManifest(ScanManifest.build(opts.source, opts.deepScan, reporter));
+        }
+        if ("emptied".equals(opts.deleteEmpty)) options.setMovedFrom(ConcurrentHashMap.newKeySet());
+
+        if (opts.categories == null) {
+            FileOrganizerLogic.moveOrCopyAllFileTypes(opts.source, opts.destination, opts.action, opts.deepScan,
+                    options, reporter, overwriteHandler);
+        } else {
+            FileOrganizerLogic.moveOrCopyByCategory(opts.source, opts.destination, opts.action, opts.deepScan,
+                    opts.categories, opts.extensions.isEmpty() ? null : opts.extensions,
+                    options, reporter, overwriteHandler);
+        }
+
+        // Only remember the new files as done when all of them went through
+        if (index != null && !reporter.cancelled() && reporter.errors == 0) {
+            try {
+                index.save();
+            } catch (IOException e) {
+                reporter.accept("[WARNING] Could not save scan index: " + e.getMessage());
+            }
+        }
+        if (opts.deleteEmpty != null && !reporter.cancelled()) deleteEmptyFolders(opts, options, reporter);
+
+        reporter.summary((System.nanoTime() - start) / 1_000_000);
+
+        if (reporter.cancelled()) return EXIT_CANCELLED;
+        return reporter.errors > 0 ? EXIT_ERRORS : EXIT_OK;
+    }
+
+    // A full scan lists every folder, so the cleanup reuses it; an incremental one only holds the changes
+    private static void deleteEmptyFolders(Options opts, OrganizeOptions options, RunReporter reporter) {
+        EmptyFolderCleaner cleaner;
+        if (options.getMovedFrom() != null) {
+            cleaner = EmptyFolderCleaner.forEmptied(Path.of(opts.source), options.getMovedFrom(), opts.workers, reporter);
+        } else if (options.getScanManifest() != null && !opts.incremental) {
+            cleaner = EmptyFolderCleaner.forScan(options.getScanManifest(), opts.workers, reporter);
+        } else {
+            cleaner = EmptyFolderCleaner.forTree(Path.of(opts.source), opts.deepScan, opts.workers, reporter);
+        }
+        EmptyFolderCleaner.Result result = cleaner.run();
+        reporter.accept("[INFO] Cleanup done: " + result.deleted() + " empty folders deleted (" + result.checked() + " checked)");
+    }
+
+    // Dry run: only metadata is read, the plan file is the only thing written
+    private static int plan(Options opts, OrganizeOptions options, RunReporter reporter, long start) {
+        RunPlan.Summary summary = null;
+        try {
+            summary = FileOrganizerLogic.planRun(opts.source, opts.destination, opts.action, opts.deepScan,
+                    opts.categories, opts.extensions.isEmpty() ? null : opts.extensions, opts.onConflict,
+                    options, Path.of(opts.planFile), reporter);
+        } catch (IOException e) {
+            reporter.accept("[ERROR] Could not write plan: " + opts.planFile + " → " + e.getMessage());
+        }
+
+        if (summary != null) reporter.planSummary(summary, opts.planFile, (System.nanoTime() - start) / 1_000_000);
+        if (reporter.cancelled()) return EXIT_CANCELLED;
+        return reporter.errors > 0 || summary == null ? EXIT_ERRORS : EXIT_OK;
+    }
+
+    private static int executePlan(Options opts, OrganizeOptions options, RunReporter reporter,
+                                   BiFunction<File, boolean[], OverwriteDecision> overwriteHandler, long start) {
+        try {
+            FileOrganizerLogic.executePlan(Path.of(opts.executePlan), options, reporter, overwriteHandler);
+        } catch (IOException e) {
+            reporter.accept("[ERROR] Could not read plan: " + opts.executePlan + " → " + e.getMessage());
+        }
+
+        reporter.summary((System.nanoTime() - start) / 1_000_000);
+
+        if (reporter.cancelled()) return EXIT_CANCELLED;
+        return reporter.errors > 0 ? EXIT_ERRORS : EXIT_OK;
+    }
+
+    private static int resume(Options opts, OrganizeOptions options, RunReporter reporter,
+                              BiFunction<File, boolean[], OverwriteDecision> overwriteHandler, long start) {
+        try {
+            FileOrganizerLogic.resumeRun(Path.of(opts.resume), options, reporter, overwriteHandler);
+        } catch (IOException e) {
+            reporter.accept("[ERROR] Could not resume from journal: " + opts.resume + " → " + e.getMessage());
+        }
+
+        reporter.summary((System.nanoTime() - start) / 1_000_000);
+
+        if (reporter.cancelled()) return EXIT_CANCELLED;
+        return reporter.errors > 0 ? EXIT_ERRORS : EXIT_OK;
+    }
+
+    private static int undo(Options opts, OrganizeOptions options, RunReporter reporter, long start) {
+        try {
+            FileOrganizerLogic.rollbackRun(Path.of(opts.undo), options, reporter);
+        } catch (IOException e) {
+            reporter.accept("[ERROR] Could not roll back from history: " + opts.undo + " → " + e.getMessage());
+        }
+
+        reporter.summary((System.nanoTime() - start) / 1_000_000);
+        return reporter.errors > 0 ? EXIT_ERRORS : EXIT_OK;
+    }
+
+    // Runs until the process is stopped (Ctrl+C / SIGTERM) or the collision policy cancels a batch. The shutdown
+    // hook stops the batch in progress and the watch loop, then waits for the loop to end so that the watcher
+    // is closed here, not by the hook.
+    private static int watch(Options opts, OrganizeOptions options, RunReporter reporter,
+                             BiFunction<File, boolean[], OverwriteDecision> overwriteHandler, PrintStream err) {
+        CountDownLatch stopped = new CountDownLatch(1);
+        try (FolderWatcher watcher = new FolderWatcher(opts.source, opts.destination, opts.action, opts.deepScan,
+                opts.categories, opts.extensions.isEmpty() ? null : opts.extensions,
+                options, opts.settleMillis, reporter, overwriteHandler)) {
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                watcher.stop();
+                try {
+                    stopped.await(WATCH_STOP_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                    // exiting anyway
+                }
+            }));
+            watcher.run();
+            return watcher.getCancelReason() != null ? EXIT_CANCELLED : EXIT_OK;
+        } catch (IOException e) {
+            err.println("[ERROR] Could not watch source folder: " + e.getMessage());
+            return EXIT_ERRORS;
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    //============================================= ARGUMENTS ===========================================================
+
+    // Reads limit changes from stdin while the run goes ("rate 5MB", "rate off", "files 20"); ends with stdin
+    private static void listenForLimits(TransferThrottle throttle, Consumer<String> log) {
+        Thread listener = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] words = line.trim().split("\\s+");
+                    if (words.length == 1 && words[0].isEmpty()) continue;
+                    try {
+                        if (words.length == 2 && words[0].equalsIgnoreCase("rate")) {
+                            throttle.setBytesPerSecond(TransferThrottle.parseRate(words[1]));
+                        } else if (words.length == 2 && words[0].equalsIgnoreCase("files")) {
+                            throttle.setFilesPerSecond(TransferThrottle.parseCount(words[1]));
+                        } else {
+                            log.accept("[WARNING] Unknown command: " + line.trim() + " (expected rate RATE|off or files N|off)");
+                            continue;
+                        }
+                        log.accept("[INFO] Transfer limit: " + throttle);
+                    } catch (IllegalArgumentException e) {
+                        log.accept("[WARNING] " + e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                // stdin closed: the limits stay as they are
+            }
+        }, "limit-commands");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    static final class Options {
+        String source, destination;
+        String action = "move";
+        boolean deepScan;
+        Set<String> categories;                                 // null = all file types
+        Map<String, Set<String>> extensions = new HashMap<>();
+        OverwriteDecision onConflict = OverwriteDecision.SKIP;         // also the answer for what the policy leaves open
+        CollisionPolicy collisions = CollisionPolicy.ASK;
+        Map<String, String> categoryConflicts = new HashMap<>();       // resolved once the rules are known
+        int workers = OrganizeOptions.DEFAULT_PARALLELISM;
+        long maxRate, maxFiles;                                 // 0 = no limit
+        boolean limitsControl;                                  // stdin commands and JMX for the limits
+        boolean json = true;
+        LogPipeline.Level logLevel = LogPipeline.Level.DETAIL;
+        String logFile;
+        boolean incremental;
+        boolean watch;
+        long settleMillis = FolderWatcher.DEFAULT_SETTLE_MILLIS;
+        String indexFile;
+        boolean skipIdentical;
+        boolean sniff;
+        OrganizeOptions.DateFolders dateFolders = OrganizeOptions.DateFolders.NONE;
+        boolean exif = true;
+        String deleteEmpty;                                     // null = keep empty folders
+        String planFile, executePlan;
+        boolean journal = true;
+        String journalFile, resume;
+        boolean history = true;
+        String undo;
+        String digestCache;
+        String rulesFile;
+        int progressSeconds = 1;
+        boolean metrics;
+        boolean help;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--source" -> o.source = value(args, ++i, arg);
+                    case "--dest", "--destination" -> o.destination = value(args, ++i, arg);
+                    case "--action" -> o.action = oneOf(value(args, ++i, arg), arg, "move", "copy");
+                    case "--deep" -> o.deepScan = true;
+                    case "--categories" -> {
+                        o.categories = new HashSet<>();
+                        for (String c : value(args, ++i, arg).split(",")) o.categories.add(c.trim());
+                    }
+                    case "--extensions" -> {
+                        String spec = value(args, ++i, arg);
+                        int eq = spec.indexOf('=');
+                        if (eq <= 0) throw new IllegalArgumentException("Expected CATEGORY=ext,ext but got: " + spec);
+
+                        Set<String> exts = o.extensions.computeIfAbsent(spec.substring(0, eq).trim(), k -> new HashSet<>());
+                        for (String ext : spec.substring(eq + 1).split(",")) {
+                            String e = ext.trim().replaceFirst("^\\.", "").toLowerCase();
+                            if (!e.isEmpty()) exts.add(e);
+                        }
+                    }
+                    case "--on-conflict" -> {
+                        String spec = value(args, ++i, arg);
+                        int eq = spec.indexOf('=');
+                        if (eq > 0) {
+                            CollisionPolicy.parse(spec.substring(eq + 1));
+                            o.categoryConflicts.put(spec.substring(0, eq).trim(), spec.substring(eq + 1));
+                        } else {
+                            o.collisions = o.collisions.withDefault(spec);
+                            // A plain action is also what a plan records
+                            CollisionPolicy.Clause[] clauses = CollisionPolicy.parse(spec);
+                            if (clauses.length == 1 && clauses[0].condition() == CollisionPolicy.Condition.ALWAYS && clauses[0].decision() != null) {
+                                o.onConflict = clauses[0].decision();
+                            }
+                        }
+                    }
+                    case "--workers" -> {
+                        try {
+                            o.workers = Integer.parseInt(value(args, ++i, arg));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("--workers expects a number");
+                        }
+                    }
+                    case "--max-rate" -> o.maxRate = TransferThrottle.parseRate(value(args, ++i, arg));
+                    case "--max-files" -> o.maxFiles = TransferThrottle.parseCount(value(args, ++i, arg));
+                    case "--limits-control" -> o.limitsControl = true;
+                    case "--log-level" -> o.logLevel = LogPipeline.Level.valueOf(
+                            oneOf(value(args, ++i, arg), arg, "detail", "info", "warning", "error").toUpperCase());
+                    case "--log-file" -> o.logFile = value(args, ++i, arg);
+                    case "--incremental" -> o.incremental = true;
+                    case "--watch" -> o.watch = true;
+                    case "--settle-ms" -> {
+                        try {
+                            o.settleMillis = Long.parseLong(value(args, ++i, arg));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("--settle-ms expects a number");
+                        }
+                    }
+                    case "--index" -> o.indexFile = value(args, ++i, arg);
+                    case "--skip-identical" -> o.skipIdentical = true;
+                    case "--sniff" -> o.sniff = true;
+                    case "--date-folders" -> o.dateFolders = OrganizeOptions.DateFolders.valueOf(
+                            oneOf(value(args, ++i, arg), arg, "year", "month").toUpperCase());
+                    case "--no-exif" -> o.exif = false;
+                    case "--delete-empty" -> o.deleteEmpty = oneOf(value(args, ++i, arg), arg, "all", "emptied");
+                    case "--plan" -> o.planFile = value(args, ++i, arg);
+                    case "--execute-plan" -> o.executePlan = value(args, ++i, arg);
+                    case "--journal" -> o.journalFile = value(args, ++i, arg);
+                    case "--no-journal" -> o.journal = false;
+                    case "--resume" -> o.resume = value(args, ++i, arg);
+                    case "--no-history" -> o.history = false;
+                    case "--undo" -> o.undo = value(args, ++i, arg);
+                    case "--digest-cache" -> o.digestCache = value(args, ++i, arg);
+                    case "--rules" -> o.rulesFile = value(args, ++i, arg);
+                    case "--progress-every" -> {
+                        try {
+                            o.progressSeconds = Math.max(0, Integer.parseInt(value(args, ++i, arg)));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("--progress-every expects a number of seconds");
+                        }
+                    }
+                    case "--metrics" -> o.metrics = true;
+                    case "--format" -> o.json = oneOf(value(args, ++i, arg), arg, "json", "text").equals("json");
+                    case "--help", "-h" -> o.help = true;
+                    default -> throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+
+            if (o.help) return o;
+            if (o.undo != null) {
+                if (o.planFile != null || o.executePlan != null || o.resume != null || o.watch || o.incremental) {
+                    throw new IllegalArgumentException("--undo cannot be combined with --plan, --execute-plan, --resume, --watch or --incremental");
+                }
+                return o;       // everything else comes from the history
+            }
+            if (o.resume != null) {
+                if (o.planFile != null || o.executePlan != null || o.watch || o.incremental) {
+                    throw new IllegalArgumentException("--resume cannot be combined with --plan, --execute-plan, --watch or --incremental");
+                }
+                return o;       // everything else comes from the journal
+            }
+            if (o.executePlan != null) {
+                if (o.planFile != null || o.watch || o.incremental) {
+                    throw new IllegalArgumentException("--execute-plan cannot be combined with --plan, --watch or --incremental");
+                }
+                return o;       // everything else comes from the plan
+            }
+            if (o.source == null || o.destination == null) throw new IllegalArgumentException("--source and --dest are required");
+            if (o.planFile != null && (o.watch || o.incremental)) {
+                throw new IllegalArgumentException("--plan cannot be combined with --watch or --incremental");
+            }
+            if (o.deleteEmpty != null && (o.planFile != null || o.watch)) {
+                throw new IllegalArgumentException("--delete-empty cannot be combined with --plan or --watch");
+            }
+            if ("emptied".equals(o.deleteEmpty) && !o.action.equals("move")) {
+                throw new IllegalArgumentException("--delete-empty emptied needs --action move");
+            }
+
+            // --extensions alone implies the categories it names
+            if (o.categories == null && !o.extensions.isEmpty()) o.categories = new HashSet<>(o.extensions.keySet());
+            return o;
+        }
+
+        private static String value(String[] args, int i, String option) {
+            if (i >= args.length) throw new IllegalArgumentException(option + " needs a value");
+            return args[i];
+        }
+
+        private static String oneOf(String value, String option, String... allowed) {
+            for (String a : allowed) if (a.equalsIgnoreCase(value)) return a;
+            throw new IllegalArgumentException(option + " must be one of " + String.join(", ", allowed));
+        }
+
+        // Category names are checked once the rules are known (a rules file can add categories)
+        void resolveCategories(OrganizeRules rules) {
+            if (categories != null) {
+                Set<String> resolved = new HashSet<>();
+                for (String c : categories) resolved.add(category(c, rules));
+                categories = resolved;
+            }
+            Map<String, Set<String>> resolvedExtensions = new HashMap<>();
+            extensions.forEach((c, exts) -> resolvedExtensions.computeIfAbsent(category(c, rules), k -> new HashSet<>()).addAll(exts));
+            extensions = resolvedExtensions;
+            categoryConflicts.forEach((c, spec) -> collisions = collisions.withCategory(category(c, rules), spec));
+        }
+
+        // Accepts any casing, returns the name used for the category folder
+        private static String category(String name, OrganizeRules rules) {
+            for (String c : rules.categories()) if (c.equalsIgnoreCase(name.trim())) return c;
+            throw new IllegalArgumentException("Unknown category: " + name + " (expected " + rules.categories() + ")");
+        }
+    }
+
+    //============================================= OUTPUT ===========================================================
+
+    // Receives the log lines of the run and prints them as JSON lines or text.
+    // Transfer/skip counts come from the run's RunProgress and cancelling from its RunContext; errors are
+    // counted from the log, since unreadable folders and the like never reach the transfer step.
+    static final class RunReporter implements Consumer<String> {
+        private final PrintStream out;
+        private final boolean json;
+        private final LogPipeline.Level minLevel;
+        private final LogFileSink logFile;
+        RunProgress progress = new RunProgress();
+        RunContext context = new RunContext();
+        int errors;
+        private long lastReportedDone = -1, lastReportedTotal = -1;
+
+        RunReporter(PrintStream out, boolean json, LogPipeline.Level minLevel, LogFileSink logFile) {
+            this.out = out;
+            this.json = json;
+            this.minLevel = minLevel;
+            this.logFile = logFile;
+        }
+
+        @Override
+        public synchronized void accept(String message) {
+            LogPipeline.Level level = LogPipeline.Level.of(message);
+            String text = message.replaceFirst("^\\[[A-Za-z]+\\]:?\\s*", "");
+
+            if (level == LogPipeline.Level.ERROR) errors++;
+
+            if (logFile != null) logFile.write(System.currentTimeMillis(), message);
+            if (level.compareTo(minLevel) < 0) return;
+
+            if (json) out.println("{\"type\":\"log\",\"level\":\"" + level + "\",\"message\":" + quote(text) + "}");
+            else out.println(message);
+        }
+
+        // Called by the ticker; quiet while nothing moves (e.g. a watch run waiting for files)
+        synchronized void progressTick() {
+            RunProgress.Snapshot s = progress.snapshot();
+            if (s.filesDone() == lastReportedDone && s.filesTotal() == lastReportedTotal) return;
+            lastReportedDone = s.filesDone();
+            lastReportedTotal = s.filesTotal();
+
+            if (!json) {
+                out.println("[INFO] Progress: " + RunProgress.describe(s));
+                return;
+            }
+
+            StringBuilder categories = new StringBuilder();
+            s.transferredByCategory().forEach((category, count) ->
+                    categories.append(categories.isEmpty() ? "" : ",").append(quote(category)).append(':').append(count));
+
+            out.println("{\"type\":\"progress\",\"filesDone\":" + s.filesDone() + ",\"filesTotal\":" + s.filesTotal()
+                    + ",\"bytesDone\":" + s.bytesDone() + ",\"bytesTotal\":" + s.bytesTotal()
+                    + ",\"totalKnown\":" + s.totalKnown()
+                    + ",\"bytesPerSecond\":" + Math.round(s.bytesPerSecond())
+                    + ",\"filesPerSecond\":" + Math.round(s.filesPerSecond())
+                    + ",\"etaSeconds\":" + s.etaSeconds()
+                    + ",\"byCategory\":{" + categories + "}}");
+        }
+
+        synchronized void planSummary(RunPlan.Summary plan, String planFile, long elapsedMs) {
+            if (json) {
+                out.println("{\"type\":\"plan\",\"files\":" + plan.files() + ",\"bytes\":" + plan.bytes()
+                        + ",\"folders\":" + plan.folders() + ",\"collisions\":" + plan.collisions()
+                        + ",\"file\":" + quote(planFile) + ",\"elapsedMs\":" + elapsedMs + "}");
+            } else {
+                out.println("[INFO] Planned " + plan.files() + " files (" + RunProgress.formatBytes(plan.bytes()) + "), "
+                        + plan.folders() + " folders to create, " + plan.collisions() + " collisions in " + elapsedMs + " ms");
+            }
+            out.flush();
+        }
+
+        boolean cancelled() { return context.isCancelled(); }
+
+        synchronized void summary(long elapsedMs) {
+            long transferred = progress.getTransferred(), skipped = progress.getSkipped();
+            boolean cancelled = cancelled();
+            if (json) {
+                out.println("{\"type\":\"summary\",\"transferred\":" + transferred + ",\"skipped\":" + skipped
+                        + ",\"errors\":" + errors + ",\"cancelled\":" + cancelled + ",\"elapsedMs\":" + elapsedMs + "}");
+            } else {
+                out.println("[INFO] Done: " + transferred + " transferred, " + skipped + " skipped, "
+                        + errors + " errors" + (cancelled ? ", cancelled" : "") + " in " + elapsedMs + " ms");
+            }
+            out.flush();
+        }
+
+        static String quote(String s) {
+            StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"' -> sb.append("\\\"");
+                    case '\\' -> sb.append("\\\\");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    case '\t' -> sb.append("\\t");
+                    default -> {
+                        if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                        else sb.append(c);
+                    }
+                }
+            }
+            return sb.append('"').toString();
+        }
+    }
+}
@@ -1,7 +1,14 @@
 import javax.swing.*;
 import java.awt.event.ItemListener;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.awt.BorderLayout;
 import java.awt.Component;
 
@@ -11,15 +18,22 @@ public class FileOrganizerController {
     private final FileOrganizerGUI gui;
     private File lastSourceDir = null;
     private File lastDestinationDir = null;
-    public enum OverwriteDecision {
-        OVERWRITE, KEEP_BOTH, SKIP, CANCEL
-    }
+    private ScanManifest scanManifest = null;          // last scan of the source folder, reused until path/depth changes
+    private ScanWorker scanWorker = null;              // scan in progress (null when idle); older ones are superseded
+    private Map<String, Set<String>> streamedExtensions = new HashMap<>();   // extensions found so far by scanWorker
+    private EmptyFolderCleaner cleaner = null;         // empty-folder cleanup in progress (null when idle)
+    private RunContext activeRun = null;               // organize/resume run in progress, for the Stop button
+    private final TransferThrottle throttle = new TransferThrottle();     // shared by every run, set from the limit spinners
+
+    private static final int PROGRESS_REFRESH_MILLIS = 250;
 
     //CONSTRUCTOR
     public FileOrganizerController(FileOrganizerGUI gui) {
         this.gui = gui;
         attachListeners();
         validateByExtensionState();
+        loadRules();
+        SwingUtilities.invokeLater(this::offerResume);
     }
 
     //============================================ ACTION LISTENERS ========================================================
@@ -40,9 +54,14 @@ public class FileOrganizerController {
         gui.getAudioCheckBox().addActionListener(e -> onAudioCheckBox());
         gui.getVideosCheckBox().addActionListener(e -> onVideoCheckBox());
         gui.getOthersCheckBox().addActionListener(e -> onOthersCheckBox());
+        gui.getRateLimitSpinner().addChangeListener(e -> onLimitChanged());
+        gui.getFilesLimitSpinner().addChangeListener(e -> onLimitChanged());
 
         //BOTTOM
         gui.getClearLogsButton().addActionListener(e -> onClearLogs());
+        gui.getUndoLastRunButton().addActionListener(e -> onUndoLastRun());
+        gui.getCancelScanButton().addActionListener(e -> cancelScan());
+        gui.getStopButton().addActionListener(e -> stopRun());
         gui.getStartOrganizeButton().addActionListener(e -> {
             String sourceFolder = gui.getSourceFolderPathField().getText().trim();
             String destinationFolder = gui.getDestinationFolderPathField().getText().trim();
@@ -252,16 +271,23 @@ public class FileOrganizerController {
         boolean deepScan = gui.getDeepScanRadioButton().isSelected();
         String sourceFolder = gui.getSourceFolderPathField().getText();
 
-        if (sourceFolder == null || sourceFolder.isBlank()) {
-            refreshCategoryExtensions(false, gui.getImagesCheckBox(), gui.getImagesExtPanel(), Collections.emptySet(),"Images");
-            refreshCategoryExtensions(false, gui.getDocumentsCheckBox(), gui.getDocumentsExtPanel(), Collections.emptySet(),"Documents");
-            refreshCategoryExtensions(false, gui.getAudioCheckBox(), gui.getAudioExtPanel(), Collections.emptySet(),"Audios");
-            refreshCategoryExtensions(false, gui.getVideosCheckBox(), gui.getVideoExtPanel(), Collections.emptySet(),"Videos");
-            refreshCategoryExtensions(false, gui.getOthersCheckBox(), gui.getOthersExtPanel(), Collections.emptySet(),"Others");
+        if (sourceFolder == null || sourceFolder.isBlank() || !showExtensions) {
+            renderExtensionPanels(Collections.emptyMap());
+            return;
+        }
+
+        if (scanManifest != null && scanManifest.matches(sourceFolder, deepScan)) {
+            renderExtensionPanels(scanManifest.getExtensionsByCategory());
             return;
         }
 
-        Map<String, Set<String>> extMap = FileOrganizerLogic.scanExtensionsByCategory(sourceFolder, deepScan);
+        // Not scanned yet: scan in the background and fill the panels as extensions are found
+        if (scanWorker == null || !scanWorker.isFor(sourceFolder, deepScan)) startScan(sourceFolder, deepScan);
+        renderExtensionPanels(streamedExtensions);
+    }
+
+    private void renderExtensionPanels(Map<String, Set<String>> extMap) {
+        boolean showExtensions = gui.getByExtensionCheckBox().isSelected();
 
         refreshCategoryExtensions(showExtensions, gui.getImagesCheckBox(), gui.getImagesExtPanel(), extMap.get("Images"), "Images");
         refreshCategoryExtensions(showExtensions, gui.getDocumentsCheckBox(), gui.getDocumentsExtPanel(), extMap.get("Documents"), "Documents");
@@ -270,6 +296,77 @@ public class FileOrganizerController {
         refreshCategoryExtensions(showExtensions, gui.getOthersCheckBox(), gui.getOthersExtPanel(), extMap.get("Others"), "Others");
     }
 
+    //============================================= BACKGROUND SCAN ===========================================================
+
+    // Starts a scan of the source folder, superseding any scan still running
+    private void startScan(String sourceFolder, boolean deepScan) {
+        if (scanWorker != null) scanWorker.cancel(false);
+
+        streamedExtensions = new HashMap<>();
+        scanWorker = new ScanWorker(sourceFolder, deepScan);
+        gui.getCancelScanButton().setEnabled(true);
+        logInfo("Scanning source folder" + (deepScan ? " (deep scan)" : "") + ": " + sourceFolder);
+        scanWorker.execute();
+    }
+
+    // Also stops an empty-folder cleanup, which borrows the button while it runs
+    private void cancelScan() {
+        if (cleaner != null) cleaner.cancel();
+        else if (scanWorker != null) scanWorker.cancel(false);
+    }
+
+    // Builds the ScanManifest off the EDT and streams each newly found extension to the panels
+    private class ScanWorker extends SwingWorker<ScanManifest, String[]> {
+        private final String sourceFolder;
+        private final boolean deepScan;
+
+        ScanWorker(String sourceFolder, boolean deepScan) {
+            this.sourceFolder = sourceFolder;
+            this.deepScan = deepScan;
+        }
+
+        boolean isFor(String sourceFolder, boolean deepScan) {
+            return this.sourceFolder.equals(sourceFolder) && this.deepScan == deepScan;
+        }
+
+        @Override
+        protected ScanManifest doInBackground() {
+            return ScanManifest.build(sourceFolder, deepScan, msg -> {}, this::isCancelled,
+                    (category, ext) -> publish(new String[]{category, ext}));
+        }
+
+        @Override
+        protected void process(List<String[]> found) {
+            if (this != scanWorker) return;     // superseded by a newer scan
+
+            for (String[] pair : found) {
+                streamedExtensions.computeIfAbsent(pair[0], k -> new TreeSet<>()).add(pair[1]);
+            }
+            renderExtensionPanels(streamedExtensions);
+        }
+
+        @Override
+        protected void done() {
+            if (this != scanWorker) return;
+
+            scanWorker = null;
+            gui.getCancelScanButton().setEnabled(false);
+
+            if (isCancelled()) {
+                logInfo("Scan cancelled: " + sourceFolder);
+                return;
+            }
+
+            try {
+                scanManifest = get();
+                logInfo("Scan complete: " + scanManifest.getFiles().size() + " files");
+                renderExtensionPanels(scanManifest.getExtensionsByCategory());
+            } catch (InterruptedException | ExecutionException e) {
+                logError("Scan failed: " + e.getMessage());
+            }
+        }
+    }
+
     private void refreshCategoryExtensions(
             boolean showExtensions,
             JCheckBox categoryCheckBox,
@@ -327,20 +424,60 @@ public class FileOrganizerController {
 
         String action = gui.getMoveRadioButton().isSelected() ? "move" : "copy";
         boolean deepScan = gui.getDeepScanRadioButton().isSelected();
+        OrganizeOptions options = new OrganizeOptions((Integer) gui.getParallelismSpinner().getValue());
+        RunProgress progress = new RunProgress();
+        options.setProgress(progress);
+        options.setJournalFile(RunJournal.newLocation());
+        options.setHistoryFile(RunHistory.newLocation());
+        options.setContentSniffing(gui.getDetectContentCheckBox().isSelected());
+        options.setDateFolders(OrganizeOptions.DateFolders.values()[gui.getDateFoldersComboBox().getSelectedIndex()]);
+        if ("move".equals(action)) options.setMovedFrom(ConcurrentHashMap.newKeySet());
+        options.setCollisionPolicy(collisionPolicy());
+        options.setMetrics(gui.getMetricsCheckBox().isSelected());
+        RunContext context = startRun(options);
+        boolean skipIdentical = gui.getSkipIdenticalCheckBox().isSelected();
+        ScanManifest cachedManifest = scanManifest != null && scanManifest.matches(sourceFolder, deepScan) ? scanManifest : null;
+        ScanWorker pendingScan = scanWorker != null && scanWorker.isFor(sourceFolder, deepScan) ? scanWorker : null;
+
+        LogPipeline runLog = gui.getLogPipeline();     // thread-safe: workers log straight into it
+        LogFileSink logFile = gui.getSaveLogCheckBox().isSelected() ? openRunLogFile() : null;
 
         logInfo("===== PROCESS START =====");
         logInfo("Source Folder: " + sourceFolder);
         logInfo("Destination Folder: " + destinationFolder);
 
+        // Polls the counters on the EDT; the workers never touch the progress bar
+        javax.swing.Timer progressTimer = new javax.swing.Timer(PROGRESS_REFRESH_MILLIS, e -> showProgress(progress.snapshot(), false));
+        gui.getProgressBar().setIndeterminate(true);
+        gui.getProgressBar().setString("Scanning...");
+        progressTimer.start();
+
         SwingWorker<Void, String> worker = new SwingWorker<>() {
             private boolean fatalError = false;
+            private ScanManifest manifest = cachedManifest;
 
             @Override
             protected Void doInBackground() {
+                // One scan serves the organize run and the empty-folder cleanup;
+                // a background scan of the same folder is awaited instead of starting another walk
+                if (manifest == null && pendingScan != null) {
+                    try {
+                        manifest = pendingScan.get();
+                    } catch (InterruptedException | ExecutionException | CancellationException e) {
+                        manifest = null;
+                    }
+                }
+                if (manifest == null || !manifest.isComplete()) {
+                    manifest = ScanManifest.build(sourceFolder, deepScan, runLog, context::isCancelled, (category, ext) -> {});
+                    if (context.isCancelled()) return null;
+                }
+                options.setScanManifest(manifest);
+                if (skipIdentical) options.setContentDigests(ContentDigests.load(ContentDigests.defaultLocation(), runLog));
+
                 if (gui.getAllFileTypesRadioButton().isSelected()) {
                     FileOrganizerLogic.moveOrCopyAllFileTypes(
-                            sourceFolder, destinationFolder, action, deepScan,
-                            this::publish,   // ✅ publish logs
+                            sourceFolder, destinationFolder, action, deepScan, options,
+                            runLog,   // ✅ batched into the log area
                             FileOrganizerController.this::handleOverwrite
                     );
 
@@ -357,7 +494,7 @@ public class FileOrganizerController {
                                 "No Categories Selected",
                                 JOptionPane.WARNING_MESSAGE
                         ));
-                        publish("[WARNING] " + msg);
+                        runLog.accept("[WARNING] " + msg);
 
                         fatalError = true; // mark fatal stop
                         return null;
@@ -378,7 +515,7 @@ public class FileOrganizerController {
                                     "No Extensions Selected",
                                     JOptionPane.WARNING_MESSAGE
                             ));
-                            publish("[WARNING] " + msg);
+                            runLog.accept("[WARNING] " + msg);
 
                             fatalError = true; // mark fatal stop
                             return null;
@@ -388,25 +525,30 @@ public class FileOrganizerController {
                     // ✅ Proceed only if validations pass
                     FileOrganizerLogic.moveOrCopyByCategory(
                             sourceFolder, destinationFolder, action,
-                            deepScan, categoriesFilter, extensionsFilter,
-                            this::publish,   // publish logs
+                            deepScan, categoriesFilter, extensionsFilter, options,
+                            runLog,   // batched into the log area
                             FileOrganizerController.this::handleOverwrite
                     );
                 }
                 return null;
             }
 
-            @Override
-            protected void process(java.util.List<String> logs) {
-                for (String log : logs) {
-                    gui.log(log);  // ✅ updates GUI in real-time
-                }
-            }
-
             @Override
             protected void done() {
+                progressTimer.stop();
+                showProgress(progress.snapshot(), true);
+                saveDigests(options.getContentDigests());
+
+                endRun();
                 if (fatalError) {
                     // 🚨 Skip all finalization (like delete-empty-folder prompt)
+                    closeRunLogFile(logFile);
+                    return;
+                }
+                if (context.isCancelled()) {
+                    scanManifest = null;        // part of the source may have moved
+                    gui.log("[INFO] ===== PROCESS STOPPED =====\n");
+                    closeRunLogFile(logFile);
                     return;
                 }
 
@@ -414,31 +556,366 @@ public class FileOrganizerController {
                         ? "Do you want to delete empty folders (including subfolders) in the source directory?"
                         : "Do you want to delete empty folders directly under the source directory?";
 
-                int choice = JOptionPane.showConfirmDialog(
-                        gui.getFrame(),
-                        msg,
-                        "Delete Empty Folders",
-                        JOptionPane.YES_NO_OPTION
-                );
-
-                if (choice == JOptionPane.YES_OPTION) {
-                    File sourceDir = new File(sourceFolder);
-                    if (deepScan) {
-                        FileOrganizerLogic.deleteEmptyFolders(sourceDir, gui::log);
-                    } else {
-                        FileOrganizerLogic.deleteEmptyFoldersTopLevel(sourceDir, gui::log);
-                    }
+                // After a deep move, the folders the run emptied can be cleaned without visiting the rest
+                Set<Path> movedFrom = options.getMovedFrom();
+                boolean offerEmptied = deepScan && movedFrom != null;
+                int parallelism = options.getParallelism();
+                EmptyFolderCleaner cleanup = null;
+                if (offerEmptied) {
+                    String[] choices = {"All Empty Folders", "Only Emptied by This Run", "No"};
+                    int choice = JOptionPane.showOptionDialog(gui.getFrame(), msg, "Delete Empty Folders", JOptionPane.DEFAULT_OPTION,
+                            JOptionPane.QUESTION_MESSAGE, null, choices, choices[1]);
+                    if (choice == 0) cleanup = EmptyFolderCleaner.forScan(manifest, parallelism, runLog);
+                    else if (choice == 1) cleanup = EmptyFolderCleaner.forEmptied(manifest.getRoot(), movedFrom, parallelism, runLog);
+                } else if (JOptionPane.showConfirmDialog(gui.getFrame(), msg, "Delete Empty Folders", JOptionPane.YES_NO_OPTION)
+                        == JOptionPane.YES_OPTION) {
+                    cleanup = EmptyFolderCleaner.forScan(manifest, parallelism, runLog);
                 }
 
-                gui.log("[INFO] ===== PROCESS COMPLETE =====\n");
+                // A move (or cleanup) changed the source, so the next scan has to start fresh
+                boolean sourceChanged = "move".equals(action) || cleanup != null;
+                scanManifest = sourceChanged ? null : manifest;
+
+                if (cleanup == null) {
+                    gui.log("[INFO] ===== PROCESS COMPLETE =====\n");
+                    closeRunLogFile(logFile);
+                } else {
+                    cleanEmptyFolders(cleanup, () -> {
+                        gui.log("[INFO] ===== PROCESS COMPLETE =====\n");
+                        closeRunLogFile(logFile);
+                    });
+                }
             }
         };
 
         worker.execute();
     }
 
+    //============================================= STOP ===========================================================
+
+    // One run at a time: Start is off and Stop on until endRun()
+    private RunContext startRun(OrganizeOptions options) {
+        activeRun = new RunContext();
+        options.setRunContext(activeRun);
+        options.setThrottle(throttle);
+        if (throttle.isLimited()) logInfo("Transfer limit: " + throttle);
+        gui.getStartOrganizeButton().setEnabled(false);
+        gui.getUndoLastRunButton().setEnabled(false);     // its history is the "last run" until it ends
+        gui.getStopButton().setEnabled(true);
+        return activeRun;
+    }
+
+    private void endRun() {
+        activeRun = null;
+        gui.getStartOrganizeButton().setEnabled(true);
+        gui.getUndoLastRunButton().setEnabled(true);
+        gui.getStopButton().setEnabled(false);
+    }
+
+    // The workers of a run in progress pick up the new limits with their next file (or chunk)
+    private void onLimitChanged() {
+        throttle.setBytesPerSecond(((Number) gui.getRateLimitSpinner().getValue()).longValue() * 1024 * 1024);
+        throttle.setFilesPerSecond(((Number) gui.getFilesLimitSpinner().getValue()).longValue());
+        if (activeRun != null) logInfo("Transfer limit: " + throttle);
+    }
+
+    // The walk and the queued files stop at once, a large copy after its current chunk; done() reports the end
+    private void stopRun() {
+        if (activeRun != null && activeRun.cancel("stopped by the user")) {
+            logInfo("Operation cancelled by the user (Stop). Finishing the transfers in progress");
+        }
+        gui.getStopButton().setEnabled(false);
+    }
+
+    //============================================= EMPTY FOLDERS ===========================================================
+
+    // Runs the cleanup off the EDT (a large tree can take a while), with progress and the cancel button
+    private void cleanEmptyFolders(EmptyFolderCleaner cleanup, Runnable then) {
+        cleaner = cleanup;
+        JButton cancelButton = gui.getCancelScanButton();
+        String buttonText = cancelButton.getText();
+        cancelButton.setText("Cancel Cleanup");
+        cancelButton.setEnabled(true);
+
+        JProgressBar bar = gui.getProgressBar();
+        javax.swing.Timer progressTimer = new javax.swing.Timer(PROGRESS_REFRESH_MILLIS, e -> {
+            long total = cleanup.getTotal();
+            bar.setIndeterminate(total < 0);
+            if (total > 0) bar.setValue((int) Math.round((double) cleanup.getChecked() / total * bar.getMaximum()));
+            bar.setString("Cleaning up: " + cleanup.getChecked() + " folders checked, " + cleanup.getDeleted() + " deleted");
+        });
+        progressTimer.start();
+
+        new SwingWorker<EmptyFolderCleaner.Result, Void>() {
+            @Override
+            protected EmptyFolderCleaner.Result doInBackground() {
+                return cleanup.run();
+            }
+
+            @Override
+            protected void done() {
+                progressTimer.stop();
+                cleaner = null;
+                cancelButton.setText(buttonText);
+                cancelButton.setEnabled(scanWorker != null);
+                bar.setIndeterminate(false);
+
+                try {
+                    EmptyFolderCleaner.Result result = get();
+                    String summary = result.deleted() + " empty folders deleted (" + result.checked() + " checked)";
+                    bar.setString((result.cancelled() ? "Cleanup cancelled: " : "Cleanup done: ") + summary);
+                    logInfo((result.cancelled() ? "Cleanup cancelled: " : "Cleanup done: ") + summary);
+                } catch (InterruptedException | ExecutionException e) {
+                    logError("Cleanup failed: " + e.getMessage());
+                }
+                then.run();
+            }
+        }.execute();
+    }
+
+    //============================================= RULES ===========================================================
+
+    // ~/.fileorganizer/rules.conf, when there is one, replaces the built-in categories for this session
+    private void loadRules() {
+        Path file = OrganizeRules.defaultLocation();
+        if (!Files.exists(file)) return;
+        try {
+            OrganizeRules.setActive(OrganizeRules.load(file));
+            logInfo("Using organize rules from: " + file);
+        } catch (IOException e) {
+            logWarning("Ignoring organize rules, using the built-in categories: " + e.getMessage());
+        }
+    }
+
+    //============================================= RESUME ===========================================================
+
+    // A run that was killed (crash, power cut) left its journal behind: offer to finish it.
+    // The journal is read in the background (it can be large); journals of runs still going are not offered.
+    private void offerResume() {
+        new SwingWorker<RunJournal.Replay, Void>() {
+            private Path journalFile;
+
+            @Override
+            protected RunJournal.Replay doInBackground() throws IOException {
+                List<Path> leftOver = RunJournal.leftOver();
+                if (leftOver.isEmpty()) return null;
+                journalFile = leftOver.get(leftOver.size() - 1);
+                return RunJournal.replay(journalFile);
+            }
+
+            @Override
+            protected void done() {
+                RunJournal.Replay replay;
+                try {
+                    replay = get();
+                } catch (InterruptedException | java.util.concurrent.ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    logWarning("Ignoring unreadable run journal: " + journalFile + " → " + cause.getMessage());
+                    return;
+                }
+                if (replay != null && activeRun == null) offerResume(journalFile, replay);
+            }
+        }.execute();
+    }
+
+    private void offerResume(Path journalFile, RunJournal.Replay replay) {
+        RunJournal.Header header = replay.header();
+        String msg = "<html>The last run did not finish:<br>"
+                + header.action() + " " + header.source() + " → " + header.destination() + "<br><br>"
+                + replay.finished() + " files done, " + (replay.notStarted().size() + replay.interrupted().size()) + " left"
+                + (replay.scanDone() ? "" : " (plus files not scanned yet)") + ".<br><br>Resume it now?</html>";
+        String[] choices = {"Resume", "Discard", "Later"};
+
+        int choice = JOptionPane.showOptionDialog(gui.getFrame(), msg, "Resume Interrupted Run",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, choices, choices[0]);
+
+        if (choice == 0) {
+            onResume(journalFile);
+        } else if (choice == 1) {
+            if (RunFileLock.isInUse(journalFile)) {
+                logWarning("Not discarded, a run is using the journal now: " + journalFile);
+                return;
+            }
+            try {
+                Files.deleteIfExists(journalFile);
+                logInfo("Discarded run journal: " + journalFile);
+            } catch (IOException e) {
+                logWarning("Could not delete run journal: " + journalFile + " → " + e.getMessage());
+            }
+        }
+    }
+
+    private void onResume(Path journalFile) {
+        OrganizeOptions options = new OrganizeOptions((Integer) gui.getParallelismSpinner().getValue());
+        RunProgress progress = new RunProgress();
+        options.setProgress(progress);
+        options.setCollisionPolicy(collisionPolicy());
+        options.setMetrics(gui.getMetricsCheckBox().isSelected());
+        options.setHistoryFile(RunHistory.newLocation());
+        RunContext context = startRun(options);
+        LogPipeline runLog = gui.getLogPipeline();
+
+        logInfo("===== RESUME START =====");
+
+        javax.swing.Timer progressTimer = new javax.swing.Timer(PROGRESS_REFRESH_MILLIS, e -> showProgress(progress.snapshot(), false));
+        gui.getProgressBar().setIndeterminate(true);
+        progressTimer.start();
+
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                try {
+                    FileOrganizerLogic.resumeRun(journalFile, options, runLog, FileOrganizerController.this::handleOverwrite);
+                } catch (IOException e) {
+                    runLog.accept("[ERROR] Could not resume from journal: " + journalFile + " → " + e.getMessage());
+                }
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                progressTimer.stop();
+                showProgress(progress.snapshot(), true);
+                endRun();
+                scanManifest = null;        // the resumed run changed the folders
+                gui.log(context.isCancelled() ? "[INFO] ===== RESUME STOPPED =====\n" : "[INFO] ===== RESUME COMPLETE =====\n");
+            }
+        }.execute();
+    }
+
+    //============================================= UNDO ===========================================================
+
+    private void onUndoLastRun() {
+        List<Path> history = RunHistory.list();
+        if (history.isEmpty()) {
+            JOptionPane.showMessageDialog(gui.getFrame(), "There is no run to undo.", "Undo Last Run", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        Path historyFile = history.get(history.size() - 1);
+        RunHistory.Header header;
+        try {
+            header = RunHistory.readHeader(historyFile);
+        } catch (IOException e) {
+            showError("Could not read run history: " + historyFile + " → " + e.getMessage());
+            return;
+        }
+
+        String when = java.time.Instant.ofEpochMilli(header.createdAt()).atZone(java.time.ZoneId.systemDefault())
+                .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+        String msg = "<html>Undo the run of " + when + "?<br>" + header.action() + " " + header.source() + " → " + header.destination()
+                + "<br><br>" + ("move".equalsIgnoreCase(header.action()) ? "Moved files go back to where they were"
+                : "Copied files are deleted") + " and the folders it created are removed.<br>"
+                + "Files changed since then, and files that overwrote one already at the destination, are left in place.</html>";
+
+        int choice = JOptionPane.showConfirmDialog(gui.getFrame(), msg, "Undo Last Run", JOptionPane.YES_NO_OPTION);
+        if (choice != JOptionPane.YES_OPTION) return;
+
+        OrganizeOptions options = new OrganizeOptions((Integer) gui.getParallelismSpinner().getValue());
+        RunProgress progress = new RunProgress();
+        options.setProgress(progress);
+        LogPipeline runLog = gui.getLogPipeline();
+
+        logInfo("===== UNDO START =====");
+        gui.getUndoLastRunButton().setEnabled(false);
+        gui.getStartOrganizeButton().setEnabled(false);           // no new run while files go back
+
+        javax.swing.Timer progressTimer = new javax.swing.Timer(PROGRESS_REFRESH_MILLIS, e -> showProgress(progress.snapshot(), false));
+        gui.getProgressBar().setIndeterminate(true);
+        progressTimer.start();
+
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                try {
+                    FileOrganizerLogic.rollbackRun(historyFile, options, runLog);
+                } catch (IOException e) {
+                    runLog.accept("[ERROR] Could not roll back from history: " + historyFile + " → " + e.getMessage());
+                }
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                progressTimer.stop();
+                showProgress(progress.snapshot(), true);
+                gui.getUndoLastRunButton().setEnabled(true);
+                gui.getStartOrganizeButton().setEnabled(true);
+                scanManifest = null;        // files are back in the source
+                gui.log("[INFO] ===== UNDO COMPLETE =====\n");
+            }
+        }.execute();
+    }
+
+    // Full log of one run in ~/.fileorganizer/logs, written in the background
+    private LogFileSink openRunLogFile() {
+        String name = "run-" + java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".log";
+        Path file = Path.of(System.getProperty("user.home"), ".fileorganizer", "logs", name);
+        try {
+            LogFileSink sink = new LogFileSink(file);
+            gui.getLogPipeline().setFileSink(sink);
+            logInfo("Saving full log to: " + file);
+            return sink;
+        } catch (IOException e) {
+            logWarning("Could not create log file: " + file + " → " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void closeRunLogFile(LogFileSink sink) {
+        if (sink == null) return;
+        gui.getLogPipeline().setFileSink(null);
+        try {
+            sink.close();
+        } catch (IOException e) {
+            logWarning("Log file is incomplete: " + sink.getFile() + " → " + e.getMessage());
+        }
+    }
+
+    private void saveDigests(ContentDigests digests) {
+        if (digests == null) return;
+        try {
+            digests.save();
+        } catch (IOException e) {
+            logWarning("Could not save digest cache: " + e.getMessage());
+        }
+    }
+
+    // Runs on the EDT; "finished" also logs what was transferred per category
+    private void showProgress(RunProgress.Snapshot s, boolean finished) {
+        JProgressBar bar = gui.getProgressBar();
+
+        if (!s.totalKnown() && !finished) {
+            bar.setIndeterminate(true);
+            bar.setString(s.filesTotal() == 0 ? "Scanning..." : RunProgress.describe(s));
+            return;
+        }
+
+        bar.setIndeterminate(false);
+        bar.setValue((int) Math.round(s.fraction() * bar.getMaximum()));
+        bar.setString(finished
+                ? "Done: " + s.transferred() + " transferred, " + s.skipped() + " skipped, " + s.errors() + " errors in "
+                        + RunProgress.formatDuration(s.elapsedMillis() / 1000)
+                : RunProgress.describe(s));
+
+        if (finished && !s.transferredByCategory().isEmpty()) {
+            StringBuilder perCategory = new StringBuilder();
+            s.transferredByCategory().forEach((category, count) ->
+                    perCategory.append(perCategory.isEmpty() ? "" : ", ").append(category).append(' ').append(count));
+            logInfo("Transferred per category: " + perCategory);
+        }
+    }
+
     //============================================= OVERWRITE DIALOG ===========================================================
 
+    // Same order as the GUI's "ON CONFLICT" choices; anything a policy leaves open ("ask") goes to the dialog below
+    private static final String[] CONFLICT_POLICIES = {null, "skip-if-same,ask", "overwrite-if-newer,skip",
+            "overwrite-if-larger,skip", "keep-both", "skip"};
+
+    private CollisionPolicy collisionPolicy() {
+        return CollisionPolicy.ASK.withDefault(CONFLICT_POLICIES[gui.getOnConflictComboBox().getSelectedIndex()]);
+    }
+
     public OverwriteDecision handleOverwrite(File targetFile, boolean[] applyToAll) {
         JCheckBox applyToAllCheck = new JCheckBox("Apply to all files");
 
@@ -484,7 +961,7 @@ public class FileOrganizerController {
     private void logError(String message) { logCallback("[ERROR] " + message);}
 
     private void logCallback(String logMessage) {
-        // ✅ Instead of writing directly, let SwingWorker publish it if running
+        // ✅ Goes through the log pipeline, same as the worker threads
         gui.log(logMessage);
     }
 
@@ -494,6 +971,7 @@ public class FileOrganizerController {
     }
 
     private void onClearLogs() {
+        gui.getLogPipeline().clear();
         gui.getLogArea().setText("");
         logInfo("Logs cleared");
     }
@@ -3,7 +3,6 @@ import javax.swing.border.TitledBorder;
 import javax.swing.plaf.FontUIResource;
 import javax.swing.text.BadLocationException;
 import java.awt.*;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
 
@@ -16,13 +15,21 @@ public class FileOrganizerGUI extends JFrame {
     private JRadioButton moveRadioButton;
     private JRadioButton topLevelRadioButton, deepScanRadioButton;
     private JRadioButton allFileTypesRadioButton, organizeByCategoryRadioButton;
+    private JSpinner parallelismSpinner, rateLimitSpinner, filesLimitSpinner;
+    private JCheckBox skipIdenticalCheckBox, detectContentCheckBox, metricsCheckBox;
+    private JComboBox<String> dateFoldersComboBox, onConflictComboBox;
     private JPanel imagesExtPanel,documentsExtPanel,audioExtPanel,videoExtPanel, othersExtPanel;
     private JCheckBox imagesCheckBox,documentsCheckBox, audioCheckBox, videosCheckBox, byExtensionCheckBox, othersCheckBox;
 
     private JTextArea logArea;
-    private JButton startOrganizeButton, clearLogsButton;
+    private JButton startOrganizeButton, stopButton, clearLogsButton, cancelScanButton, undoLastRunButton;
+    private JComboBox<LogPipeline.Level> logLevelComboBox;
+    private JCheckBox saveLogCheckBox;
+    private JProgressBar progressBar;
 
-    private static final SimpleDateFormat LOG_TIME_FORMAT = new SimpleDateFormat("HH:mm:ss");
+    // Log lines from any thread are queued here and appended to logArea in batches
+    private final LogPipeline logPipeline = new LogPipeline(LogPipeline.DEFAULT_MAX_LINES);
+    private static final int LOG_FLUSH_MILLIS = 200;
 
     public FileOrganizerGUI(){
 
@@ -60,6 +67,9 @@ public class FileOrganizerGUI extends JFrame {
 
         add(mainPanel);
         pack();
+
+        javax.swing.Timer logFlushTimer = new javax.swing.Timer(LOG_FLUSH_MILLIS, e -> flushLog());
+        logFlushTimer.start();
         log("Application started");
 
     }
@@ -184,6 +194,65 @@ public class FileOrganizerGUI extends JFrame {
         fileTypeGroup.add(allFileTypesRadioButton);
         fileTypeGroup.add(organizeByCategoryRadioButton);
 
+        //PARALLELISM ROW
+        JLabel parallelismLabel = new JLabel("WORKERS:");
+        centerOptionsPanel.add(parallelismLabel,createGbc(0,3,GridBagConstraints.WEST,GridBagConstraints.NONE,0));
+
+        parallelismSpinner = new JSpinner(new SpinnerNumberModel(
+                OrganizeOptions.DEFAULT_PARALLELISM, 1, OrganizeOptions.MAX_PARALLELISM, 1));
+        parallelismSpinner.setToolTipText("Number of files moved/copied at the same time (1 = one by one).");
+        centerOptionsPanel.add(parallelismSpinner, createGbc(1,3,GridBagConstraints.WEST,GridBagConstraints.NONE,0));
+
+        skipIdenticalCheckBox = new JCheckBox("Skip identical files");
+        skipIdenticalCheckBox.setToolTipText("Leave a file in place when a file with the same content is already in the destination.");
+        centerOptionsPanel.add(skipIdenticalCheckBox, createGbc(2,3,GridBagConstraints.WEST,GridBagConstraints.NONE,0));
+
+        //DATE FOLDERS ROW
+        JLabel dateFoldersLabel = new JLabel("DATE FOLDERS:");
+        centerOptionsPanel.add(dateFoldersLabel,createGbc(0,4,GridBagConstraints.WEST,GridBagConstraints.NONE,0));
+
+        // Same order as OrganizeOptions.DateFolders
+        dateFoldersComboBox = new JComboBox<>(new String[]{"None", "By year", "By year and month"});
+        dateFoldersComboBox.setToolTipText("Split each category folder by date (capture date for photos, otherwise last modified).");
+        centerOptionsPanel.add(dateFoldersComboBox, createGbc(1,4,GridBagConstraints.WEST,GridBagConstraints.NONE,0));
+
+        detectContentCheckBox = new JCheckBox("Detect type from content");
+        detectContentCheckBox.setToolTipText("Classify files without a known extension (or with a misleading one like .txt) by their first bytes.");
+        centerOptionsPanel.add(detectContentCheckBox, createGbc(2,4,GridBagConstraints.WEST,GridBagConstraints.NONE,0));
+
+        //ON CONFLICT ROW
+        JLabel onConflictLabel = new JLabel("ON CONFLICT:");
+        centerOptionsPanel.add(onConflictLabel,createGbc(0,5,GridBagConstraints.WEST,GridBagConstraints.NONE,0));
+
+        // Same order as FileOrganizerController.CONFLICT_POLICIES
+        onConflictComboBox = new JComboBox<>(new String[]{"Ask", "Skip unchanged, else ask", "Overwrite if newer, else skip",
+                "Overwrite if larger, else skip", "Keep both", "Skip"});
+        onConflictComboBox.setToolTipText("What to do when a file with the same name is already in the destination "
+                + "(\"conflict\" lines in rules.conf can set it per category).");
+        centerOptionsPanel.add(onConflictComboBox, createGbc(1,5,GridBagConstraints.WEST,GridBagConstraints.NONE,0));
+
+        metricsCheckBox = new JCheckBox("Collect run metrics");
+        metricsCheckBox.setToolTipText("Time each stage of the run and log a summary at the end (also shown over JMX).");
+        centerOptionsPanel.add(metricsCheckBox, createGbc(2,5,GridBagConstraints.WEST,GridBagConstraints.NONE,0));
+
+        //TRANSFER LIMIT ROW (can be changed while a run goes)
+        JLabel limitLabel = new JLabel("TRANSFER LIMIT:");
+        centerOptionsPanel.add(limitLabel,createGbc(0,6,GridBagConstraints.WEST,GridBagConstraints.NONE,0));
+
+        rateLimitSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 100_000, 1));
+        rateLimitSpinner.setToolTipText("Megabytes per second for all transfers together (0 = no limit). Takes effect at once, also during a run.");
+        JPanel rateLimitPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        rateLimitPanel.add(rateLimitSpinner);
+        rateLimitPanel.add(new JLabel(" MB/s"));
+        centerOptionsPanel.add(rateLimitPanel, createGbc(1,6,GridBagConstraints.WEST,GridBagConstraints.NONE,0));
+
+        filesLimitSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 100_000, 1));
+        filesLimitSpinner.setToolTipText("Files started per second (0 = no limit). Takes effect at once, also during a run.");
+        JPanel filesLimitPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        filesLimitPanel.add(filesLimitSpinner);
+        filesLimitPanel.add(new JLabel(" files/s"));
+        centerOptionsPanel.add(filesLimitPanel, createGbc(2,6,GridBagConstraints.WEST,GridBagConstraints.NONE,0));
+
         centerPanel.add(centerOptionsPanel, BorderLayout.NORTH);
 
         //========= FILE TYPE CATEGORY PANEL (left aligned, hidden initially) =========
@@ -273,15 +342,55 @@ public class FileOrganizerGUI extends JFrame {
         //BUTTONS PANEL
         JPanel buttonsPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 5));
 
+        buttonsPanel.add(new JLabel("Show:"));
+        logLevelComboBox = new JComboBox<>(LogPipeline.Level.values());
+        logLevelComboBox.setSelectedItem(logPipeline.getDisplayLevel());
+        logLevelComboBox.setFocusable(false);
+        logLevelComboBox.setToolTipText("Lowest level shown in the log (DETAIL = one line per file)");
+        logLevelComboBox.addActionListener(e -> logPipeline.setDisplayLevel((LogPipeline.Level) logLevelComboBox.getSelectedItem()));
+        buttonsPanel.add(logLevelComboBox);
+
+        saveLogCheckBox = new JCheckBox("Save full log");
+        saveLogCheckBox.setFocusable(false);
+        saveLogCheckBox.setToolTipText("Also write every log line of a run to a file in ~/.fileorganizer/logs");
+        buttonsPanel.add(saveLogCheckBox);
+
+        cancelScanButton = new JButton("Cancel Scan");
+        cancelScanButton.setFocusable(false);
+        cancelScanButton.setEnabled(false);
+        cancelScanButton.setToolTipText("Stop scanning the source folder for extensions");
+        buttonsPanel.add(cancelScanButton);
+
         startOrganizeButton = new JButton("Start Organizing");
         startOrganizeButton.setFocusable(false);
         buttonsPanel.add(startOrganizeButton);
 
+        stopButton = new JButton("Stop");
+        stopButton.setFocusable(false);
+        stopButton.setEnabled(false);
+        stopButton.setToolTipText("Stop the run: files already moved/copied stay, a large copy stops after its current chunk");
+        buttonsPanel.add(stopButton);
+
+        undoLastRunButton = new JButton("Undo Last Run");
+        undoLastRunButton.setFocusable(false);
+        undoLastRunButton.setToolTipText("Put the files of the last run back where they were");
+        buttonsPanel.add(undoLastRunButton);
+
         clearLogsButton = new JButton("Clear Logs");
         clearLogsButton.setFocusable(false);
         buttonsPanel.add(clearLogsButton);
 
-        bottomPanel.add(buttonsPanel, BorderLayout.SOUTH);
+        //PROGRESS BAR (filled in by the controller while a run is going)
+        progressBar = new JProgressBar(0, 1000);
+        progressBar.setStringPainted(true);
+        progressBar.setString("Idle");
+        progressBar.setFont(new Font("SansSerif", Font.PLAIN, 11));
+
+        JPanel southPanel = new JPanel(new BorderLayout(0, 5));
+        southPanel.add(progressBar, BorderLayout.NORTH);
+        southPanel.add(buttonsPanel, BorderLayout.CENTER);
+
+        bottomPanel.add(southPanel, BorderLayout.SOUTH);
 
         return bottomPanel;
     }
@@ -322,15 +431,28 @@ public class FileOrganizerGUI extends JFrame {
     }
 
     //LOG AREA FORMAT
+    // Safe to call from any thread; the line shows up on the next flush
     public void log(String message) {
-        String timestamp = LOG_TIME_FORMAT.format(new Date());
-        logArea.append("[" + timestamp + "] " + message + "\n");
+        logPipeline.accept(message);
+    }
+
+    // Runs on the EDT: one append per batch, then trims the oldest lines beyond the cap
+    private void flushLog() {
+        List<LogPipeline.Line> batch = logPipeline.drain();
+        int dropped = logPipeline.takeDropped();
+        if (batch.isEmpty()) return;
+
+        StringBuilder text = new StringBuilder(batch.size() * 80);
+        if (dropped > 0) text.append("[WARNING] ").append(dropped).append(" log lines not shown (display limit)\n");
+        for (LogPipeline.Line line : batch) text.append(LogPipeline.format(line)).append('\n');
+        logArea.append(text.toString());
 
         try {
-            int end = logArea.getDocument().getLength();
-            int line = logArea.getLineOfOffset(end);            // last line index
-            int startOfLine = logArea.getLineStartOffset(line); // beginning of last line
-            logArea.setCaretPosition(startOfLine);              // caret leftmost
+            int excess = logArea.getLineCount() - 1 - logPipeline.getMaxLines();      // last line is the empty one after '\n'
+            if (excess > 0) logArea.replaceRange("", 0, logArea.getLineEndOffset(excess - 1));
+
+            int line = Math.max(0, logArea.getLineCount() - 2);      // last written line
+            logArea.setCaretPosition(logArea.getLineStartOffset(line)); // caret leftmost
         } catch (BadLocationException ex) {
             logArea.append("[ERROR] " + ex.getMessage() + "\n");
         }
@@ -433,11 +555,25 @@ public class FileOrganizerGUI extends JFrame {
     public JCheckBox getAudioCheckBox(){ return audioCheckBox;}
     public JCheckBox getDocumentsCheckBox(){ return documentsCheckBox;}
     public JCheckBox getOthersCheckBox(){ return othersCheckBox;}
+    public JSpinner getParallelismSpinner(){ return parallelismSpinner;}
+    public JSpinner getRateLimitSpinner(){ return rateLimitSpinner;}
+    public JSpinner getFilesLimitSpinner(){ return filesLimitSpinner;}
+    public JCheckBox getSkipIdenticalCheckBox(){ return skipIdenticalCheckBox;}
+    public JCheckBox getDetectContentCheckBox(){ return detectContentCheckBox;}
+    public JCheckBox getMetricsCheckBox(){ return metricsCheckBox;}
+    public JComboBox<String> getDateFoldersComboBox(){ return dateFoldersComboBox;}
+    public JComboBox<String> getOnConflictComboBox(){ return onConflictComboBox;}
 
     //BOTTOM PANEL
     public JTextArea getLogArea(){return logArea;}
     public JButton getStartOrganizeButton(){return startOrganizeButton;}
+    public JButton getStopButton(){return stopButton;}
     public JButton getClearLogsButton(){return clearLogsButton;}
+    public JButton getUndoLastRunButton(){return undoLastRunButton;}
+    public JButton getCancelScanButton(){return cancelScanButton;}
+    public JCheckBox getSaveLogCheckBox(){return saveLogCheckBox;}
+    public JProgressBar getProgressBar(){return progressBar;}
+    public LogPipeline getLogPipeline(){return logPipeline;}
 
     //============================================== MAIN METHOD ===========================================================
     public static void main(String[] args) {
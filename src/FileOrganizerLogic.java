@@ -1,6 +1,8 @@
 import java.io.*;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.*;
 
 public class FileOrganizerLogic {
@@ -10,11 +12,21 @@ public class FileOrganizerLogic {
     public static final Set<String> DOCS   = Set.of("pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx", "txt", "csv", "rtf");
     public static final Set<String> AUDIOS = Set.of("mp3", "wav", "flac", "aac", "ogg", "m4a");
     public static final Set<String> VIDEO  = Set.of("mp4", "mkv", "mov", "avi", "wmv");
+    public static final List<String> CATEGORIES = List.of("Images", "Documents", "Audios", "Videos", "Others");
+
+    // How many "name (n).ext" copies are compared before giving up on finding an identical one
+    private static final int MAX_DUPLICATE_PROBES = 100;
 
     // All file types (top-level or deep)
     public static void moveOrCopyAllFileTypes(
             String sourceFolder, String destinationFolder, String action, boolean deepScan, Consumer<String> logCallBack,
-            BiFunction<File, boolean[], FileOrganizerController.OverwriteDecision> overwriteHandler){
+            BiFunction<File, boolean[], OverwriteDecision> overwriteHandler){
+        moveOrCopyAllFileTypes(sourceFolder, destinationFolder, action, deepScan, new OrganizeOptions(), logCallBack, overwriteHandler);
+    }
+
+    public static void moveOrCopyAllFileTypes(
+            String sourceFolder, String destinationFolder, String action, boolean deepScan, OrganizeOptions options,
+            Consumer<String> logCallBack, BiFunction<File, boolean[], OverwriteDecision> overwriteHandler){
 
         File sourceDir = new File(sourceFolder);
         File destinationDir = new File(destinationFolder);
@@ -24,16 +36,22 @@ public class FileOrganizerLogic {
             else logCallBack.accept("[ERROR] Could not create destination folder: " + destinationDir.getAbsolutePath());
         }
 
-        Map<String, Object> overwriteState = new HashMap<>();
-        processDirectory(sourceDir, destinationDir, action, deepScan, logCallBack, overwriteHandler,
-                null,null,true, overwriteState);
+        runProcessDirectory(sourceDir, destinationDir, action, deepScan, options, logCallBack, overwriteHandler, null, null, null);
     }
 
     // === By category (top-level or deep) ===
     public static void moveOrCopyByCategory(
             String sourceFolder, String destinationFolder, String action, boolean deepScan,
             Set<String> categoriesFilter, Map<String, Set<String>> extensionsFilter, Consumer<String> logCallBack,
-            BiFunction<File, boolean[], FileOrganizerController.OverwriteDecision> overwriteHandler) {
+            BiFunction<File, boolean[], OverwriteDecision> overwriteHandler) {
+        moveOrCopyByCategory(sourceFolder, destinationFolder, action, deepScan, categoriesFilter, extensionsFilter,
+                new OrganizeOptions(), logCallBack, overwriteHandler);
+    }
+
+    public static void moveOrCopyByCategory(
+            String sourceFolder, String destinationFolder, String action, boolean deepScan,
+            Set<String> categoriesFilter, Map<String, Set<String>> extensionsFilter, OrganizeOptions options,
+            Consumer<String> logCallBack, BiFunction<File, boolean[], OverwriteDecision> overwriteHandler) {
 
         if (categoriesFilter == null || categoriesFilter.isEmpty()) {
             logCallBack.accept("[WARNING] No categories selected.");
@@ -48,195 +66,1111 @@ public class FileOrganizerLogic {
             else logCallBack.accept("[ERROR] Could not create destination folder: " + destinationDir.getAbsolutePath());
         }
 
-        Map<String, Object> overwriteState = new HashMap<>();
-        processDirectory(sourceDir, destinationDir, action, deepScan, logCallBack, overwriteHandler,
-                categoriesFilter,extensionsFilter,true, overwriteState);
+        runProcessDirectory(sourceDir, destinationDir, action, deepScan, options, logCallBack, overwriteHandler,
+                categoriesFilter, extensionsFilter, null);
     }
 
-    // Handles top-level vs deep-scan, with optional category filtering
-    private static void processDirectory(
-            File dir, File destinationDir, String action, boolean deepScan, Consumer<String> log,
-            BiFunction<File, boolean[], FileOrganizerController.OverwriteDecision> overwriteHandler,
-            Set<String> categoriesFilter,  Map<String, Set<String>> extensionsFilter,
-            boolean isRoot, Map<String, Object> overwriteState) {
+    // === Dry run ===
+    // Walks the source exactly like a run with the same arguments (categoriesFilter == null = all file types),
+    // but only reads metadata: every source → target mapping, the category folders to create and how each
+    // name collision would be resolved by onConflict are streamed to planFile. Nothing is created or moved.
+    // Planning that was cancelled (a "cancel" collision policy, the caller's RunContext) writes no plan: part
+    // of the tree must never pass for the whole of it. Returns null when no plan was written.
+    public static RunPlan.Summary planRun(
+            String sourceFolder, String destinationFolder, String action, boolean deepScan,
+            Set<String> categoriesFilter, Map<String, Set<String>> extensionsFilter, OverwriteDecision onConflict,
+            OrganizeOptions options, Path planFile, Consumer<String> logCallBack) throws IOException {
 
-        if (dir == null || !dir.exists() || !dir.isDirectory()) {
-            log.accept("[WARNING] Source folder does not exist or is not a directory: " + (dir == null ? "null" : dir.getAbsolutePath()));
-            return;
+        if (categoriesFilter != null && categoriesFilter.isEmpty()) {
+            logCallBack.accept("[WARNING] No categories selected.");
+            return null;
         }
 
-        File[] childFiles = dir.listFiles();
-        if (childFiles == null || childFiles.length == 0) {
-            log.accept("[INFO] No files found in subfolder: " + dir.getAbsolutePath());
-            return;
+        RunPlan.Header header = new RunPlan.Header(
+                Path.of(sourceFolder).toAbsolutePath().normalize(), Path.of(destinationFolder).toAbsolutePath().normalize(),
+                action, deepScan, onConflict, System.currentTimeMillis());
+
+        if (options.getRunContext() == null) options.setRunContext(new RunContext());
+        RunContext context = options.getRunContext();
+
+        RunPlan.Summary summary = null;
+        try (RunPlan.Writer plan = new RunPlan.Writer(planFile, header)) {
+            runProcessDirectory(header.source().toFile(), header.destination().toFile(), action, deepScan, options,
+                    logCallBack, (file, applyToAll) -> onConflict, categoriesFilter, extensionsFilter, plan);
+            if (!context.isCancelled()) summary = plan.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
 
-        // ✅ Top-level check: only when isRoot == true
-        if (isRoot) {
-            boolean hasFile = Arrays.stream(childFiles).anyMatch(File::isFile);   //used to scan top-level files
-            if (!hasFile) {
-                log.accept("[INFO] No top-level files found in: " + dir.getAbsolutePath());
-                // don't return → still allow scanning subdirectories
-            }
+        if (summary == null) {
+            Files.deleteIfExists(planFile);
+            logCallBack.accept("[WARNING] Planning was cancelled (" + context.getCancelReason() + "), no plan written: " + planFile.toAbsolutePath());
+            return null;
+        }
+
+        logCallBack.accept("[INFO] Plan: " + summary.files() + " files (" + RunProgress.formatBytes(summary.bytes()) + " to "
+                + action + "), " + summary.folders() + " category folders to create, " + summary.collisions()
+                + " name collisions → " + planFile.toAbsolutePath());
+        return summary;
+    }
+
+    // Runs a plan saved by planRun. Each file is checked against the size/mtime it had when it was planned
+    // (changed or missing files are skipped); a target name that was taken since then goes through overwriteHandler.
+    public static RunPlan.Summary executePlan(Path planFile, OrganizeOptions options, Consumer<String> log,
+                                              BiFunction<File, boolean[], OverwriteDecision> overwriteHandler) throws IOException {
+        RunPlan.Header header = RunPlan.readHeader(planFile);
+        File destinationDir = header.destination().toFile();
+        log.accept("[INFO] Executing plan: " + header.action() + " " + header.source() + " → " + header.destination());
+
+        if (!destinationDir.exists()) {
+            if (destinationDir.mkdirs()) log.accept("[INFO] Created destination folder: " + destinationDir.getAbsolutePath());
+            else log.accept("[ERROR] Could not create destination folder: " + destinationDir.getAbsolutePath());
         }
 
-        for (File child : childFiles) {
-            // 🚨 Add cancel check here
-            if (overwriteState.containsKey("cancelled")) {
-                return; // stop processing immediately
+        RunProgress progress = options.getProgress() != null ? options.getProgress() : new RunProgress();
+
+        // First pass only sums up the totals for the progress (the plan is small next to the data it moves)
+        RunPlan.Summary summary = RunPlan.read(planFile, new RunPlan.Visitor() {
+            @Override
+            public void onFolder(String category) {}
+
+            @Override
+            public boolean onFile(RunPlan.Item item) {
+                progress.planned(item.size());
+                return true;
             }
+        });
+        progress.totalKnown();
 
-            if (child.isDirectory()) {
-                if (deepScan) {
-                    processDirectory(child, destinationDir, action, true, log, overwriteHandler, categoriesFilter,extensionsFilter,false, overwriteState);
+        RunHistory.Writer history = openHistory(options.getHistoryFile(), header.source().toFile(), destinationDir, header.action(), log);
+        RunMetrics metrics = metrics(options, log);
+        try (TransferEngine engine = new TransferEngine(options.getParallelism())) {
+            if (engine.getParallelism() > 1) log.accept("[INFO] Parallel transfer: " + engine.getParallelism() + " workers");
+
+            Run run = new Run(destinationDir, header.action(), log, overwriteHandler, collisions(options), null, null, context(options),
+                    engine, progress, new ChunkedTransfer.Devices(), options.getContentDigests(), new NameRegistry(), OrganizeRules.active(), sniffer(options),
+                    false, new DestinationFolders(destinationDir, history, metrics, log), null, null, history, null, options.getMovedFrom(), metrics, options.getThrottle());
+
+            RunPlan.read(planFile, new RunPlan.Visitor() {
+                @Override
+                public void onFolder(String folder) {
+                    run.folders().get(folder);
                 }
-                continue;
+
+                @Override
+                public boolean onFile(RunPlan.Item item) {
+                    if (run.context().isCancelled()) return false;
+                    engine.submit(() -> executePlanned(item, run));
+                    return true;
+                }
+            });
+
+            engine.awaitCompletion();
+            logCollisions(run);
+            if (run.metrics() != null) run.metrics().finish(run.log(), run.progress().getErrors());
+        } finally {
+            closeHistory(history, log);
+        }
+        return summary;
+    }
+
+    // Everything a single organize run needs while handling one file
+    private record Run(File destinationDir, String action, Consumer<String> log,
+                       BiFunction<File, boolean[], OverwriteDecision> overwriteHandler, CollisionPolicy collisions,
+                       Set<String> categoriesFilter, Map<String, Set<String>> extensionsFilter,
+                       RunContext context, TransferEngine engine, RunProgress progress,
+                       ChunkedTransfer.Devices devices, ContentDigests digests, NameRegistry names,
+                       OrganizeRules rules, ContentSniffer sniffer, boolean exifDates, DestinationFolders folders,
+                       RunPlan.Writer plan, RunJournal journal, RunHistory.Writer history, Set<Path> resumeSkip,
+                       Set<Path> movedFrom, RunMetrics metrics, TransferThrottle throttle) {}
+
+    // Walks the source (or replays a matching scan manifest) on the calling thread
+    // and hands each file to the transfer engine
+    private static void runProcessDirectory(
+            File sourceDir, File destinationDir, String action, boolean deepScan, OrganizeOptions options,
+            Consumer<String> log, BiFunction<File, boolean[], OverwriteDecision> overwriteHandler,
+            Set<String> categoriesFilter, Map<String, Set<String>> extensionsFilter, RunPlan.Writer plan) {
+
+        // A dry run changes nothing, so there is nothing to resume or roll back
+        RunJournal journal = plan == null ? openJournal(options, sourceDir, destinationDir, action, deepScan,
+                categoriesFilter, extensionsFilter, log) : null;
+        RunHistory.Writer history = plan == null ? openHistory(options.getHistoryFile(), sourceDir, destinationDir, action, log) : null;
+        if (journal != null) journal.history(history);
+
+        RunMetrics metrics = plan == null ? metrics(options, log) : null;
+
+        // Planning never transfers anything, so it needs no workers
+        try (TransferEngine engine = new TransferEngine(plan != null ? 1 : options.getParallelism())) {
+            if (engine.getParallelism() > 1) log.accept("[INFO] Parallel transfer: " + engine.getParallelism() + " workers");
+
+            RunProgress progress = options.getProgress() != null ? options.getProgress() : new RunProgress();
+            Run run = new Run(destinationDir, action, log, overwriteHandler, collisions(options), categoriesFilter, extensionsFilter, context(options), engine, progress,
+                    new ChunkedTransfer.Devices(), options.getContentDigests(), new NameRegistry(), rules(options.getDateFolders()), sniffer(options),
+                    options.isExifDates(), new DestinationFolders(destinationDir, history, metrics, log), plan, journal, history, null,
+                    options.getMovedFrom(), metrics, options.getThrottle());
+            if (run.digests() != null) log.accept("[INFO] Files whose content is already at the destination will be skipped");
+            if (run.sniffer() != null) log.accept("[INFO] Files without a known extension are classified by their content");
+            if (options.getDateFolders() != OrganizeOptions.DateFolders.NONE) {
+                log.accept("[INFO] Files are sorted into " + options.getDateFolders().template() + " folders by "
+                        + (options.isExifDates() ? "capture date (photos) or " : "") + "last-modified date");
             }
+            if (!run.collisions().isAsk()) log.accept("[INFO] Name collisions: " + run.collisions());
+            ScanManifest manifest = options.getScanManifest();
 
-            String name = child.getName();
-            if (name.startsWith(".")) {
-                log.accept("[INFO] Skipped hidden file: " + name);
-                continue;
+            if (manifest != null && manifest.matches(sourceDir.getPath(), deepScan)) {
+                if (metrics != null) metrics.stage(RunMetrics.Stage.LISTING, manifest.getScanNanos());
+                processManifest(manifest, run);
+            } else {
+                processDirectory(sourceDir, deepScan, run);
             }
+            if (journal != null) journal.scanDone();
 
-            String ext = extOf(name);
-            String category = categoryForExt(ext); // always returns non-null
+            engine.awaitCompletion();
+            logCollisions(run);
+            if (run.metrics() != null) run.metrics().finish(run.log(), run.progress().getErrors());
+        } finally {
+            closeJournal(journal, log);
+            closeHistory(history, log);
+        }
+    }
 
-            // ✅ Category filter
-            if (categoriesFilter != null && categoriesFilter.stream().noneMatch(c -> c.equalsIgnoreCase(category))) {
-                log.accept("[INFO] Skipped (not in selected categories): " + name);
-                continue;
+    private static RunJournal openJournal(OrganizeOptions options, File sourceDir, File destinationDir, String action, boolean deepScan,
+                                          Set<String> categoriesFilter, Map<String, Set<String>> extensionsFilter,
+                                          Consumer<String> log) {
+        Path journalFile = options.getJournalFile();
+        if (journalFile == null) return null;
+        try {
+            return RunJournal.create(journalFile, new RunJournal.Header(
+                    sourceDir.toPath().toAbsolutePath().normalize(), destinationDir.toPath().toAbsolutePath().normalize(),
+                    action, deepScan, categoriesFilter, extensionsFilter, options.getDateFolders(), options.isExifDates(),
+                    options.isContentSniffing()));
+        } catch (IOException e) {
+            log.accept("[WARNING] Could not create run journal (this run cannot be resumed): " + journalFile + " → " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Reached only when the run was not killed: the journal has nothing left to resume
+    private static void closeJournal(RunJournal journal, Consumer<String> log) {
+        if (journal == null) return;
+        try {
+            if (journal.getFailure() != null) {
+                log.accept("[WARNING] Run journal is incomplete: " + journal.getFile() + " → " + journal.getFailure().getMessage());
             }
+            journal.finish();
+        } catch (IOException e) {
+            log.accept("[WARNING] Could not remove run journal: " + journal.getFile() + " → " + e.getMessage());
+        }
+    }
 
-            // ✅ Extension filter (only if provided)
-            if (extensionsFilter != null && !extensionsFilter.isEmpty()) {
-                Set<String> allowedExts = extensionsFilter.get(category); // get selected extensions for this category
-                if (allowedExts != null && !allowedExts.isEmpty() && !allowedExts.contains(ext)) {
-                    log.accept("[INFO] Skipped (extension not selected): " + name);
-                    continue;
+    private static RunHistory.Writer openHistory(Path historyFile, File sourceDir, File destinationDir, String action,
+                                                 Consumer<String> log) {
+        if (historyFile == null) return null;
+        try {
+            return new RunHistory.Writer(historyFile, new RunHistory.Header(sourceDir.toPath().toAbsolutePath().normalize(),
+                    destinationDir.toPath().toAbsolutePath().normalize(), action, System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.accept("[WARNING] Could not create run history (this run cannot be rolled back): " + historyFile + " → " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void closeHistory(RunHistory.Writer history, Consumer<String> log) {
+        if (history == null) return;
+        try {
+            history.close();
+            if (history.getFiles() == 0) Files.deleteIfExists(history.getFile());      // nothing to roll back
+            else log.accept("[INFO] This run can be rolled back with: " + history.getFile());
+        } catch (IOException e) {
+            log.accept("[WARNING] Run history is incomplete: " + history.getFile() + " → " + e.getMessage());
+        }
+    }
+
+    // The target's mtime is what rollback compares against (plain copies get a new one)
+    private static void recordTransfer(Path source, Path target, long size, boolean overwrites, Run run) {
+        if (run.history() == null) return;
+        try {
+            run.history().file(source, target, size, Files.getLastModifiedTime(target).toMillis(), overwrites);
+        } catch (IOException e) {
+            run.log().accept("[WARNING] Could not record " + target.getFileName() + " in run history → " + e.getMessage());
+        }
+    }
+
+    // === Rollback ===
+    // Undoes a run recorded in a history file, without looking at the rest of the destination:
+    // moved files go back to their original paths, copies are deleted, then the category folders the run
+    // created are removed if that left them empty. Files changed at the destination since the run, files whose
+    // original path is taken again, and files that overwrote one at the destination (which is gone, so undoing
+    // them would only leave a hole) are left where they are. The history file is deleted once
+    // everything in it has been undone, so a partial rollback can simply be run again.
+    public static RunHistory.Summary rollbackRun(Path historyFile, OrganizeOptions options, Consumer<String> log) throws IOException {
+        if (RunFileLock.isInUse(historyFile)) throw new IOException("The run is still going: " + historyFile);
+        RunHistory.Header header = RunHistory.readHeader(historyFile);
+        boolean move = "move".equalsIgnoreCase(header.action());
+        log.accept("[INFO] Rolling back: " + header.action() + " " + header.source() + " → " + header.destination());
+
+        RunProgress progress = options.getProgress() != null ? options.getProgress() : new RunProgress();
+        RunHistory.Summary summary = RunHistory.read(historyFile, entry -> progress.planned(entry.size()), null);
+        progress.totalKnown();
+        if (!summary.complete()) log.accept("[WARNING] The run was interrupted; rolling back what its history recorded");
+
+        List<Path> folders = new ArrayList<>();
+        LongAdder leftInPlace = new LongAdder();
+        try (TransferEngine engine = new TransferEngine(options.getParallelism())) {
+            if (engine.getParallelism() > 1) log.accept("[INFO] Parallel rollback: " + engine.getParallelism() + " workers");
+            ChunkedTransfer.Devices devices = new ChunkedTransfer.Devices();
+            RunHistory.read(historyFile, entry -> engine.submit(() -> {
+                if (!undo(entry, move, header.destination(), devices, progress, log)) leftInPlace.increment();
+            }), folders);
+            engine.awaitCompletion();
+        }
+
+        // Deepest first; folders that still hold something (files left in place, files added since) stay
+        folders.sort(Comparator.comparingInt(Path::getNameCount).reversed());
+        for (Path dir : folders) {
+            try {
+                Files.delete(dir);
+                log.accept("[DETAIL] Removed folder: " + dir);
+            } catch (NoSuchFileException e) {
+                // already gone
+            } catch (DirectoryNotEmptyException e) {
+                log.accept("[INFO] Kept folder (not empty): " + dir);
+            } catch (IOException e) {
+                log.accept("[WARNING] Could not remove folder: " + dir + " → " + e.getMessage());
+            }
+        }
+
+        if (leftInPlace.sum() == 0) {
+            Files.deleteIfExists(historyFile);
+            log.accept("[INFO] Rollback complete: " + summary.files() + " files");
+        } else {
+            log.accept("[WARNING] " + leftInPlace.sum() + " files could not be rolled back; the history is kept: " + historyFile);
+        }
+        return summary;
+    }
+
+    // Undoes one transfer; false when the file had to be left where it is
+    private static boolean undo(RunHistory.Entry entry, boolean move, Path destination, ChunkedTransfer.Devices devices,
+                                RunProgress progress, Consumer<String> log) {
+        Path source = entry.source(), target = entry.target();
+        String category = destination.relativize(target).getName(0).toString();
+
+        try {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(target, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException e) {
+                // Undone by an earlier rollback (or deleted by the user)
+                if (!move || Files.exists(source, LinkOption.NOFOLLOW_LINKS)) {
+                    progress.skipped(entry.size());
+                    return true;
                 }
+                log.accept("[WARNING] No longer at the destination, cannot be restored: " + target);
+                progress.skipped(entry.size());
+                return false;
             }
 
-            // ✅ Ensure category folder exists (only if not cancelled)
-            if (overwriteState.containsKey("cancelled")) {
-                return;
+            if (entry.replaced()) {
+                log.accept("[WARNING] Overwrote a file at the destination, left in place (the overwritten file cannot be restored): " + target);
+                progress.skipped(entry.size());
+                return true;
             }
 
-            // ✅ Ensure category folder exists
-            File categoryDir = new File(destinationDir, category);
-            if (!categoryDir.exists()) {
-                if (categoryDir.mkdirs()) log.accept("[INFO] Created category folder: " + category);
-                else log.accept("[WARNING] Could not create category folder: " + category);
+            if (attrs.size() != entry.size() || attrs.lastModifiedTime().toMillis() != entry.lastModified()) {
+                log.accept("[WARNING] Changed since the run, left in place: " + target);
+                progress.skipped(entry.size());
+                return false;
             }
 
-            // ✅ Perform move/copy
-            File targetFile = new File(categoryDir, name);
-            moveOrCopy(child, targetFile, action, log, overwriteHandler, overwriteState);
+            if (!move) {
+                Files.delete(target);
+                log.accept("[DETAIL] Removed copy: " + target);
+                progress.transferred(category, entry.size());
+                return true;
+            }
+
+            if (Files.exists(source, LinkOption.NOFOLLOW_LINKS)) {
+                log.accept("[WARNING] Original path is taken again, left in place: " + target);
+                progress.skipped(entry.size());
+                return false;
+            }
+
+            Files.createDirectories(source.getParent());
+            if (entry.size() >= ChunkedTransfer.LARGE_FILE_BYTES && !devices.sameDevice(target, source.getParent())) {
+                ChunkedTransfer.copy(target, source, false, progress::partial);
+                Files.delete(target);
+            } else {
+                Files.move(target, source);
+            }
+            log.accept("[DETAIL] Restored: " + target.getFileName() + " → " + source);
+            progress.transferred(category, entry.size());
+            return true;
+        } catch (IOException e) {
+            log.accept("[Error]: " + target.getFileName() + " → " + e.getMessage());
+            progress.failed(entry.size());
+            return false;
         }
     }
 
-    // === Copy or move with overwrite handling ===
-    private static void moveOrCopy(
-            File sourceFile, File targetFile, String action, Consumer<String> log,
-            BiFunction<File, boolean[], FileOrganizerController.OverwriteDecision> overwriteHandler,
-            Map<String, Object> overwriteState) {
+    // === Resume ===
+    // Picks up a run that was killed halfway, from its journal instead of a new scan:
+    // interrupted transfers are checked (complete targets kept, partial ones redone), files that were queued
+    // but not started are organized as usual. Only when the first run had not finished scanning is the
+    // source walked again, for the files the journal never saw.
+    public static void resumeRun(Path journalFile, OrganizeOptions options, Consumer<String> log,
+                                 BiFunction<File, boolean[], OverwriteDecision> overwriteHandler) throws IOException {
+        RunJournal.Replay replay = RunJournal.replay(journalFile);
+        RunJournal.Header header = replay.header();
+        File sourceDir = header.source().toFile(), destinationDir = header.destination().toFile();
+
+        log.accept("[INFO] Resuming: " + header.action() + " " + header.source() + " → " + header.destination()
+                + " (" + replay.finished() + " files done, " + replay.interrupted().size() + " interrupted, "
+                + replay.notStarted().size() + " not started" + (replay.scanDone() ? ")" : "; scanning for files not reached yet)"));
+
+        if (!destinationDir.exists() && !destinationDir.mkdirs()) {
+            log.accept("[ERROR] Could not create destination folder: " + destinationDir.getAbsolutePath());
+        }
+
+        RunProgress progress = options.getProgress() != null ? options.getProgress() : new RunProgress();
+        for (RunJournal.Intent intent : replay.interrupted()) progress.planned(intent.file().size());
+        for (RunJournal.Queued queued : replay.notStarted()) progress.planned(queued.size());
+        if (replay.scanDone()) progress.totalKnown();
+
+        // Files handled in the last moments before the crash may not be journaled; their targets are
+        // identical to the source, so identical-content detection is always on when resuming
+        ContentDigests digests = options.getContentDigests() != null ? options.getContentDigests() : new ContentDigests();
+
+        RunJournal journal = RunJournal.reopen(journalFile, replay);
+        RunHistory.Writer history = openHistory(options.getHistoryFile(), sourceDir, destinationDir, header.action(), log);
+        Set<Path> unrecorded = new HashSet<>();         // interrupted transfers the history does not have yet
+        for (RunJournal.Intent intent : replay.interrupted()) unrecorded.add(intent.target());
+        if (history != null && replay.history() != null) takeOverHistory(history, replay.history(), unrecorded, log);
+        journal.history(history);
+        RunMetrics metrics = metrics(options, log);
+        try (TransferEngine engine = new TransferEngine(options.getParallelism())) {
+            Run run = new Run(destinationDir, header.action(), log, overwriteHandler, collisions(options), header.categoriesFilter(), header.extensionsFilter(),
+                    context(options), engine, progress, new ChunkedTransfer.Devices(), digests,
+                    new NameRegistry(), rules(header.dateFolders()), header.contentSniffing() ? new ContentSniffer() : null, header.exifDates(),
+                    new DestinationFolders(destinationDir, history, metrics, log), null, journal, history,
+                    replay.scanDone() ? null : replay.journaled(), options.getMovedFrom(), metrics, options.getThrottle());
 
-        if (overwriteState.containsKey("cancelled")) { return;} // stop immediately if cancelled earlier
+            for (RunJournal.Intent intent : replay.interrupted()) {
+                boolean record = unrecorded.contains(intent.target());
+                engine.submit(() -> recoverInterrupted(intent, record, run));
+            }
+
+            for (RunJournal.Queued queued : replay.notStarted()) {
+                if (!Files.exists(queued.source(), LinkOption.NOFOLLOW_LINKS)) {
+                    // Its INTENT/DONE records were still in the journal buffer when the run died
+                    log.accept("[DETAIL] Already gone from the source (handled before the interruption): " + queued.source().getFileName());
+                    journal.done(queued.source());
+                    progress.skipped(queued.size());
+                    continue;
+                }
+                OrganizeRules.Target target = resumedTarget(queued, run);
+                if (target == null) {
+                    journal.skipped(queued.source());
+                    progress.unplanned(queued.size());
+                    continue;
+                }
+                if (!queue(queued.source(), queued.size(), queued.lastModified(), target, run)) break;
+            }
 
+            if (!replay.scanDone() && !run.context().isCancelled()) {
+                processDirectory(sourceDir, header.deepScan(), run);
+                journal.scanDone();
+            }
+
+            engine.awaitCompletion();
+            logCollisions(run);
+            if (run.metrics() != null) run.metrics().finish(run.log(), run.progress().getErrors());
+        } finally {
+            closeJournal(journal, log);
+            closeHistory(history, log);
+        }
+    }
+
+    // Where a queued file of the interrupted run goes: the category it was journaled with, and the folder the
+    // rules give it (the same rule as before when it still applies). A file queued before its content was
+    // sniffed is classified now, like the run would have; null when the filters turn it down.
+    private static OrganizeRules.Target resumedTarget(RunJournal.Queued queued, Run run) {
+        String name = queued.source().getFileName().toString(), ext = extOf(name);
+        if (queued.category().isEmpty()) {
+            if (needsSniffing(name, ext, run)) ext = sniffedExt(queued.source(), ext, run);
+            OrganizeRules.Target target = run.rules().classify(name, ext, queued.size(), queued.lastModified());
+            return accepts(queued.source(), ext, target.category(), run) ? target : null;
+        }
+
+        OrganizeRules.Target target = run.rules().classify(name, ext, queued.size(), queued.lastModified());
+        if (!target.category().equals(queued.category()) && needsSniffing(name, ext, run)) {
+            target = run.rules().classify(name, sniffedExt(queued.source(), ext, run), queued.size(), queued.lastModified());
+        }
+        return target.category().equals(queued.category()) ? target : run.rules().forCategory(queued.category());
+    }
+
+    // The resumed run's history starts with what the interrupted run recorded, so one rollback undoes the whole
+    // run; the old history is deleted once its records are taken over
+    private static void takeOverHistory(RunHistory.Writer history, Path earlier, Set<Path> unrecorded, Consumer<String> log) {
+        if (!Files.exists(earlier)) return;         // rolled back or pruned since
         try {
-            if (targetFile.exists()) {
+            RunHistory.Summary summary = history.carryOver(earlier, unrecorded);
+            history.flush();
+            Files.delete(earlier);
+            log.accept("[INFO] Continuing the run's history (" + summary.files() + " files recorded before the interruption)");
+        } catch (IOException e) {
+            log.accept("[WARNING] Could not continue the run's history, the part before the interruption is rolled back"
+                    + " on its own: " + earlier + " → " + e.getMessage());
+        }
+    }
+
+    // A transfer that had started when the run died: done, half done or not started at all.
+    // record: a finished one is not in the history yet (its record was lost with the run)
+    private static void recoverInterrupted(RunJournal.Intent intent, boolean record, Run run) {
+        RunJournal.Queued file = intent.file();
+        Path source = file.source(), target = intent.target();
+        boolean move = "move".equalsIgnoreCase(run.action());
 
-                FileOrganizerController.OverwriteDecision decision;
+        synchronized (run.engine().lockFor(target)) {
+            try {
+                if (!Files.exists(source, LinkOption.NOFOLLOW_LINKS)) {
+                    if (Files.isRegularFile(target) && Files.size(target) == file.size()) {
+                        run.log().accept("[DETAIL] Finished before the interruption: " + source.getFileName() + " → " + target);
+                        if (record) recordTransfer(source, target, file.size(), intent.overwrites(), run);
+                        run.journal().done(source);
+                        run.progress().transferred(file.category(), file.size());
+                    } else {
+                        run.log().accept("[ERROR] Interrupted transfer cannot be redone, the source is gone: " + source);
+                        run.journal().failed(source);
+                        run.progress().failed(file.size());
+                    }
+                    return;
+                }
 
-                // If user already selected "Apply to All", reuse that decision
-                if(overwriteState.containsKey("decision")) decision = (FileOrganizerController.OverwriteDecision) overwriteState.get("decision");
-                else{
-                    //Ask user
-                    boolean[] applyToAll = {false};
-                    decision = overwriteHandler.apply(targetFile, applyToAll);
+                // Moves and large copies keep the mtime, so an equal size + mtime target is the finished copy
+                if (Files.isRegularFile(target) && Files.size(target) == file.size()
+                        && Files.getLastModifiedTime(target).toMillis() == file.lastModified()) {
+                    if (move) Files.delete(source);         // copied to the other drive, the delete did not happen
+                    run.log().accept("[DETAIL] Finished before the interruption: " + source.getFileName() + " → " + target);
+                    if (record) recordTransfer(source, target, file.size(), intent.overwrites(), run);
+                    run.journal().done(source);
+                    run.progress().transferred(file.category(), file.size());
+                    return;
+                }
 
-                    //applyToAll[0] = true if checkbox is ticked
-                    if(decision != FileOrganizerController.OverwriteDecision.CANCEL && applyToAll[0]){
-                        overwriteState.put("decision", decision);
-                        log.accept("[INFO] Applied decision to all remaining files: " + decision);
+                // Missing or partial: the target name was already ours, so it is simply written again
+                run.log().accept("[DETAIL] Redoing interrupted transfer: " + source.getFileName());
+                transfer(source.toFile(), target.toFile(), file.size(), file.category(), true, intent.overwrites(), run);
+            } catch (InterruptedIOException e) {
+                stopped(source.toFile(), e, run);
+            } catch (IOException e) {
+                transferFailed(source.toFile(), file.size(), e, run);
+            } finally {
+                run.engine().release(target);
+            }
+        }
+    }
+
+    // Handles top-level vs deep-scan, with optional category filtering.
+    // One Files.walkFileTree pass: each entry is stat'ed once and its attributes decide file vs folder.
+    private static void processDirectory(File dir, boolean deepScan, Run run) {
+        Consumer<String> log = run.log();
+
+        if (dir == null || !dir.isDirectory()) {
+            log.accept("[WARNING] Source folder does not exist or is not a directory: " + (dir == null ? "null" : dir.getAbsolutePath()));
+            return;
+        }
+
+        // Listing time is the walk minus what the files it found took (classifying, and transfers run inline)
+        long walkStart = clock(run);
+        long[] inFiles = {0};
+        try {
+            SourceWalker.walk(dir.toPath(), deepScan, new SourceWalker.Visitor() {
+                @Override
+                public boolean onFile(Path file, BasicFileAttributes attrs) {
+                    long start = clock(run);
+                    try {
+                        return walked(file, attrs, start, run);
+                    } finally {
+                        if (run.metrics() != null) inFiles[0] += System.nanoTime() - start;
                     }
                 }
 
-                // Handle cancel
-                if (decision == FileOrganizerController.OverwriteDecision.CANCEL) {
-                    log.accept("[INFO] Operation cancelled by the user. Stopping further processing");
-                    overwriteState.put("cancelled", true);
+                @Override
+                public void onDirectoryDone(Path folder, boolean isRoot, int entries, int files) {
+                    if (entries == 0) log.accept("[INFO] No files found in subfolder: " + folder.toAbsolutePath());
+                    else if (isRoot && files == 0) log.accept("[INFO] No top-level files found in: " + folder.toAbsolutePath());
+                }
+
+                @Override
+                public void onError(Path path, IOException e) {
+                    log.accept("[WARNING] Could not read: " + path.toAbsolutePath() + " → " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.accept("[ERROR] Could not scan source folder: " + dir.getAbsolutePath() + " → " + e.getMessage());
+        }
+        if (run.metrics() != null) run.metrics().stage(RunMetrics.Stage.LISTING, System.nanoTime() - walkStart - inFiles[0]);
+        run.progress().totalKnown();
+    }
+
+    // One file found by the walk: classified and filtered here, then queued (start: when the walk handed it over)
+    private static boolean walked(Path file, BasicFileAttributes attrs, long start, Run run) {
+        if (run.context().isCancelled()) return false;
+        if (run.resumeSkip() != null && run.resumeSkip().contains(file.toAbsolutePath().normalize())) return true;
+
+        String name = file.getFileName().toString(), ext = extOf(name);
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        if (needsSniffing(name, ext, run)) {
+            timed(run, RunMetrics.Stage.CLASSIFICATION, start);
+            run.progress().planned(attrs.size());
+            return queueOnWorker(file, attrs.size(), lastModified, null, run);
+        }
+
+        OrganizeRules.Target target = run.rules().classify(name, ext, attrs.size(), lastModified);
+        boolean accepted = accepts(file, ext, target.category(), run);
+        timed(run, RunMetrics.Stage.CLASSIFICATION, start);
+        if (!accepted) return true;
+
+        run.progress().planned(attrs.size());
+        return queue(file, attrs.size(), lastModified, target, run);
+    }
+
+    // Same as processDirectory, but the files come from an earlier scan instead of a new walk.
+    // Filtering everything first gives the progress its full totals before the first transfer.
+    private static void processManifest(ScanManifest manifest, Run run) {
+        run.log().accept("[INFO] Using scan of " + manifest.getRoot() + " (" + manifest.getFiles().size() + " files)");
+
+        List<ScanManifest.Entry> accepted = new ArrayList<>();
+        List<OrganizeRules.Target> targets = new ArrayList<>();         // null: classified by content on a worker
+        long start = clock(run);
+        for (ScanManifest.Entry entry : manifest.getFiles()) {
+            String name = entry.path().getFileName().toString();
+            if (needsSniffing(name, entry.ext(), run)) {
+                accepted.add(entry);
+                targets.add(null);
+                run.progress().planned(entry.size());
+                continue;
+            }
+
+            OrganizeRules.Target target = run.rules().classify(name, entry.ext(), entry.size(), entry.lastModified());
+            if (!accepts(entry.path(), entry.ext(), target.category(), run)) continue;
+            accepted.add(entry);
+            targets.add(target);
+            run.progress().planned(entry.size());
+        }
+        timed(run, RunMetrics.Stage.CLASSIFICATION, start);
+        run.progress().totalKnown();
+
+        // The scan tells every folder the run needs (except those a file's content decides): create them
+        // all now, so the transfers never stop for a folder
+        if (run.plan() == null) {
+            Set<String> folders = new LinkedHashSet<>();
+            for (int i = 0; i < accepted.size(); i++) {
+                OrganizeRules.Target target = targets.get(i);
+                ScanManifest.Entry entry = accepted.get(i);
+                if (target != null && !needsCaptureDate(entry.path(), target, run)) folders.add(target.folder(entry.lastModified()));
+            }
+            run.folders().createAll(folders);
+        }
+
+        for (int i = 0; i < accepted.size(); i++) {
+            ScanManifest.Entry entry = accepted.get(i);
+            OrganizeRules.Target target = targets.get(i);
+            boolean queued = target != null ? queue(entry.path(), entry.size(), entry.lastModified(), target, run)
+                    : queueOnWorker(entry.path(), entry.size(), entry.lastModified(), null, run);
+            if (!queued) return;
+        }
+    }
+
+    // Hidden files and the category/extension filters; logs why a file is left out
+    private static boolean accepts(Path file, String ext, String category, Run run) {
+        Consumer<String> log = run.log();
+        String name = file.getFileName().toString();
+
+        if (name.startsWith(".")) {
+            log.accept("[DETAIL] Skipped hidden file: " + name);
+            run.progress().filteredOut();
+            return false;
+        }
+
+        // ✅ Category filter
+        Set<String> categoriesFilter = run.categoriesFilter();
+        if (categoriesFilter != null && categoriesFilter.stream().noneMatch(c -> c.equalsIgnoreCase(category))) {
+            log.accept("[DETAIL] Skipped (not in selected categories): " + name);
+            run.progress().filteredOut();
+            return false;
+        }
+
+        // ✅ Extension filter (only if provided)
+        Map<String, Set<String>> extensionsFilter = run.extensionsFilter();
+        if (extensionsFilter != null && !extensionsFilter.isEmpty()) {
+            Set<String> allowedExts = extensionsFilter.get(category); // get selected extensions for this category
+            if (allowedExts != null && !allowedExts.isEmpty() && !allowedExts.contains(ext)) {
+                log.accept("[DETAIL] Skipped (extension not selected): " + name);
+                run.progress().filteredOut();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Queues the move/copy of an accepted file; returns false once the run is cancelled
+    private static boolean queue(Path file, long size, long lastModified, OrganizeRules.Target target, Run run) {
+        // 🚨 Add cancel check here
+        if (run.context().isCancelled()) {
+            return false; // stop processing immediately
+        }
+
+        // The folder depends on a date inside the file: read it on a worker, like a content sniff
+        if (needsCaptureDate(file, target, run)) return queueOnWorker(file, size, lastModified, target, run);
+
+        String folder = target.folder(lastModified);
+        if (run.plan() != null) return planFile(file, size, lastModified, target.category(), folder, run);
+
+        // ✅ Perform move/copy (inline or on a worker, depending on the engine)
+        if (run.journal() != null) run.journal().queued(file, size, lastModified, target.category());
+        File targetFile = prepare(file, folder, run);
+        run.engine().submit(() -> moveOrCopy(file.toFile(), targetFile, size, lastModified, target.category(), run));
+        return true;
+    }
+
+    // Makes sure the file's folder exists (once per run); returns where the file goes
+    private static File prepare(Path file, String folder, Run run) {
+        return new File(run.folders().get(folder), file.getFileName().toString());
+    }
+
+    // Work that has to open the file before it knows where the file goes: content sniffing (target == null)
+    // and EXIF dates. Already counted as planned; a file the filters turn down after sniffing is taken out
+    // of the totals again. The file is journaled here, before SCAN_DONE can be written; one the content
+    // decides is journaled again with its category once it has one.
+    private static boolean queueOnWorker(Path file, long size, long lastModified, OrganizeRules.Target known, Run run) {
+        if (run.context().isCancelled()) return false;
+        if (run.journal() != null) run.journal().queued(file, size, lastModified, known != null ? known.category() : null);
+
+        run.engine().submit(() -> {
+            if (run.context().isCancelled()) return;
+            long start = clock(run);
+            String name = file.getFileName().toString(), ext = extOf(name);
+            OrganizeRules.Target target = known;
+            if (target == null) {
+                ext = sniffedExt(file, ext, run);
+                target = run.rules().classify(name, ext, size, lastModified);
+                if (!accepts(file, ext, target.category(), run)) {
+                    timed(run, RunMetrics.Stage.CLASSIFICATION, start);
+                    run.progress().unplanned(size);
+                    if (run.journal() != null) run.journal().skipped(file);
                     return;
                 }
+                if (run.journal() != null) run.journal().queued(file, size, lastModified, target.category());
+            }
+
+            String folder = target.folder(fileDate(file, ext, lastModified, target, run));
+            timed(run, RunMetrics.Stage.CLASSIFICATION, start);
+            if (run.plan() != null) {
+                planFile(file, size, lastModified, target.category(), folder, run);     // planning runs on one thread
+                return;
+            }
+            // Already on a worker: transfer right here (submitting again could wait on our own queue)
+            moveOrCopy(file.toFile(), prepare(file, folder, run), size, lastModified, target.category(), run);
+        });
+        return true;
+    }
+
+    // === Date folders ===
+    // {yyyy}/{MM} folders use the file's last-modified date, except for photos: copying them around
+    // (or restoring a backup) resets that, while the EXIF capture date stays with the picture.
+    private static boolean needsCaptureDate(Path file, OrganizeRules.Target target, Run run) {
+        return run.exifDates() && target.isDated() && ExifDate.EXTENSIONS.contains(extOf(file.getFileName().toString()));
+    }
+
+    private static long fileDate(Path file, String ext, long lastModified, OrganizeRules.Target target, Run run) {
+        if (!run.exifDates() || !target.isDated() || !ExifDate.EXTENSIONS.contains(ext)) return lastModified;
+        long taken = ExifDate.captureTime(file);
+        return taken > 0 ? taken : lastModified;
+    }
+
+    // Active rules, with date subfolders below every category when the run asks for them
+    // (a resumed run uses the ones it was started with, so its files land next to those moved before)
+    private static OrganizeRules rules(OrganizeOptions.DateFolders dateFolders) {
+        String template = dateFolders.template();
+        return template == null ? OrganizeRules.active() : OrganizeRules.active().withDateFolders(template);
+    }
+
+    // The caller's context when it wants to cancel the run or watch its collisions, otherwise one of the run's own
+    private static RunContext context(OrganizeOptions options) {
+        return options.getRunContext() != null ? options.getRunContext() : new RunContext();
+    }
+
+    // The run's collision policy, over the rules file's "conflict" statements
+    private static CollisionPolicy collisions(OrganizeOptions options) {
+        return options.getCollisionPolicy().over(OrganizeRules.active().collisions());
+    }
+
+    // === Content sniffing ===
+    // Files whose name says nothing (no extension, one no category knows, or one that is often wrong)
+    // are classified from their first bytes. That read happens on a worker, so the walk never waits for it;
+    // the filters are applied once the type is known.
+    private static ContentSniffer sniffer(OrganizeOptions options) {
+        return options.isContentSniffing() ? new ContentSniffer() : null;
+    }
+
+    private static boolean needsSniffing(String name, String ext, Run run) {
+        return run.sniffer() != null && !name.startsWith(".")
+                && (!run.rules().knowsExtension(ext) || ContentSniffer.SUSPICIOUS.contains(ext));
+    }
+
+    // Extension of the detected type, or ext itself when the content is not recognized
+    private static String sniffedExt(Path file, String ext, Run run) {
+        String detected = run.sniffer().sniff(file);
+        if (detected == null || detected.equals(ext)) return ext;
+        run.log().accept("[DETAIL] Detected " + detected + " content: " + file.getFileName());
+        return detected;
+    }
+
+    // Dry run: records where the file would go, using only the registry's folder listings
+    private static boolean planFile(Path file, long size, long lastModified, String category, String folder, Run run) {
+        RunPlan.Writer plan = run.plan();
+        File categoryDir = new File(run.destinationDir(), folder);
+        File targetFile = new File(categoryDir, file.getFileName().toString());
+        NameRegistry names = run.names();
+
+        try {
+            if (!names.isTaken(categoryDir)) {
+                plan.folder(folder);
+                names.markTaken(categoryDir);
+            }
+
+            RunPlan.Resolution resolution = RunPlan.Resolution.NEW;
+            if (names.isTaken(targetFile)) {
+                // A name taken by a file planned earlier in this run has no attributes yet: only unconditional clauses apply
+                OverwriteDecision decision = plan.getHeader().onConflict();
+                CollisionPolicy.Clause clause = run.collisions().isAsk() ? null
+                        : run.collisions().decide(category, size, lastModified, existingTarget(targetFile));
+                if (clause != null) decision = clause.decision();
 
-                // Apply user’s choice
                 switch (decision) {
-                    case SKIP -> {
-                        log.accept("[INFO] Skipped: " + sourceFile.getName());
-                        return;
+                    case OVERWRITE -> resolution = RunPlan.Resolution.OVERWRITE;
+                    case SKIP -> resolution = RunPlan.Resolution.SKIP;
+                    case KEEP_BOTH -> {
+                        resolution = RunPlan.Resolution.KEEP_BOTH;
+                        targetFile = names.claimCopyName(targetFile, f -> true);
                     }
-                    case KEEP_BOTH -> targetFile = nextAvailableName(targetFile);
-                    case OVERWRITE -> {
-                        // Replace existing
+                    case CANCEL -> {
+                        run.context().cancel(clause != null ? "collision policy " + clause : "cancel on conflict");
+                        run.log().accept("[INFO] Operation cancelled: a real run would stop here (name already taken): " + targetFile.getAbsolutePath());
+                        return false;
                     }
-                    default -> {
-                        // no-op, for future extensions
+                }
+            } else {
+                names.markTaken(targetFile);
+            }
+
+            plan.file(file.toAbsolutePath().normalize(), size, lastModified, targetFile.toPath().toAbsolutePath().normalize(), category, resolution);
+            run.log().accept("[DETAIL] Plan: " + file.getFileName() + " → " + targetFile.getAbsolutePath()
+                    + (resolution == RunPlan.Resolution.NEW ? "" : " (" + resolution + ")"));
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // One file of a saved plan; the plan's decision stands unless the source changed, or the target appeared
+    // (or the one to overwrite went away) since
+    private static void executePlanned(RunPlan.Item item, Run run) {
+        File sourceFile = item.source().toFile(), targetFile = item.target().toFile();
+        Consumer<String> log = run.log();
+
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(item.source(), BasicFileAttributes.class);
+            if (attrs.size() != item.size() || attrs.lastModifiedTime().toMillis() != item.lastModified()) {
+                log.accept("[WARNING] Changed since the plan was made, skipped: " + sourceFile.getAbsolutePath());
+                run.progress().skipped(item.size());
+                return;
+            }
+        } catch (IOException e) {
+            log.accept("[WARNING] No longer in the source, skipped: " + sourceFile.getAbsolutePath());
+            run.progress().skipped(item.size());
+            return;
+        }
+
+        switch (item.resolution()) {
+            case SKIP -> {
+                log.accept("[DETAIL] Skipped: " + sourceFile.getName());
+                run.progress().skipped(item.size());
+            }
+            case OVERWRITE -> {
+                synchronized (run.engine().lockFor(item.target())) {
+                    try {
+                        // Gone since the plan was made: nothing is overwritten, so none is journaled or recorded
+                        if (existingTarget(targetFile) == null) {
+                            moveOrCopy(sourceFile, targetFile, item.size(), item.lastModified(), item.category(), run);
+                        } else {
+                            transfer(sourceFile, targetFile, item.size(), item.category(), true, true, run);
+                        }
+                    } catch (InterruptedIOException e) {
+                        stopped(sourceFile, e, run);
+                    } catch (IOException e) {
+                        transferFailed(sourceFile, item.size(), e, run);
+                    } finally {
+                        run.engine().release(item.target());
                     }
                 }
             }
+            default -> moveOrCopy(sourceFile, targetFile, item.size(), item.lastModified(), item.category(), run);
+        }
+    }
 
-            if ("move".equalsIgnoreCase(action)) {
-                Files.move(sourceFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                log.accept("[INFO] Moved: " + sourceFile.getName() + " → " + targetFile.getAbsolutePath());
-            } else {
-                Files.copy(sourceFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                log.accept("[INFO] Copied: " + sourceFile.getName() + " → " + targetFile.getAbsolutePath());
+    // === Copy or move with overwrite handling ===
+    // Safe to run from several workers: writes to the same target are serialized through the engine's
+    // target lock, and only one overwrite prompt is shown at a time. size and lastModified are the source's,
+    // as the scan saw them.
+    private static void moveOrCopy(File sourceFile, File targetFile, long size, long lastModified, String category, Run run) {
+        Consumer<String> log = run.log();
+        TransferEngine engine = run.engine();
+
+        if (run.context().isCancelled()) { return;} // stop immediately if cancelled earlier
+
+        synchronized (engine.lockFor(targetFile.toPath())) {
+            try {
+                BasicFileAttributes existing = existingTarget(targetFile);
+                if (existing != null) {
+                    RunMetrics.CollisionEvent event = RunMetrics.collisionEvent();
+                    long start = clock(run);
+
+                    // Same bytes already there: nothing to decide
+                    File identical = findIdenticalCopy(sourceFile, size, targetFile, run);
+                    OverwriteDecision decision = identical != null ? OverwriteDecision.SKIP
+                            : decideCollision(sourceFile, targetFile, size, lastModified, category, existing, run);
+                    timed(run, RunMetrics.Stage.COLLISIONS, start);
+                    RunMetrics.commit(event, targetFile.toPath(), decision, identical != null);
+
+                    if (identical != null) {
+                        log.accept("[DETAIL] Skipped (identical to " + identical.getName() + "): " + sourceFile.getName());
+                        run.progress().skipped(size);
+                        if (run.journal() != null) run.journal().skipped(sourceFile.toPath());
+                        return;
+                    }
+
+                    // Handle cancel
+                    if (decision == OverwriteDecision.CANCEL) return;
+
+                    // Apply user’s choice
+                    switch (decision) {
+                        case SKIP -> {
+                            log.accept("[DETAIL] Skipped: " + sourceFile.getName());
+                            run.progress().skipped(size);
+                            if (run.journal() != null) run.journal().skipped(sourceFile.toPath());
+                            return;
+                        }
+                        case KEEP_BOTH -> {
+                            keepBoth(sourceFile, targetFile, size, category, run);
+                            return;
+                        }
+                        case OVERWRITE -> {
+                            // Replace existing
+                        }
+                        default -> {
+                            // no-op, for future extensions
+                        }
+                    }
+                }
+
+                transfer(sourceFile, targetFile, size, category, true, existing != null, run);
+
+            } catch (InterruptedIOException e) {
+                stopped(sourceFile, e, run);
+            } catch (IOException e) {
+                transferFailed(sourceFile, size, e, run);
+            } finally {
+                engine.release(targetFile.toPath());
             }
+        }
+    }
 
+    // Stands in for File.exists(): the same single stat, but it also gives the collision policy the target's
+    // size and date. null when there is nothing (readable) in the way.
+    private static BasicFileAttributes existingTarget(File targetFile) {
+        try {
+            return Files.readAttributes(targetFile.toPath(), BasicFileAttributes.class);
         } catch (IOException e) {
-            log.accept("[Error]: " + sourceFile.getName() + " → " + e.getMessage());
+            return null;
         }
     }
 
+    // The run's collision policy decides first; the handler is only asked about what the policy leaves open
+    private static OverwriteDecision decideCollision(File sourceFile, File targetFile, long size, long lastModified, String category,
+                                                     BasicFileAttributes existing, Run run) {
+        CollisionPolicy.Clause clause = run.collisions().decide(category, size, lastModified, existing);
+        if (clause == null) return run.context().ask(targetFile, run.overwriteHandler(), run.log());
 
-    // === Helpers ===
-    public static String extOf(String fileName) {
-        int dot = fileName.lastIndexOf('.');
-        if (dot == -1 || dot == fileName.length() - 1) return "";
-        return fileName.substring(dot + 1).toLowerCase();
+        run.context().decided();
+        if (clause.decision() == OverwriteDecision.CANCEL) {
+            if (run.context().cancel("collision policy " + clause)) {
+                run.log().accept("[INFO] Operation cancelled by the collision policy (" + clause + "): " + targetFile.getAbsolutePath());
+            }
+        } else if (clause.condition() != CollisionPolicy.Condition.ALWAYS && clause.decision() != OverwriteDecision.SKIP) {
+            run.log().accept("[DETAIL] " + clause + ": " + sourceFile.getName());      // a skip says so itself
+        }
+        return clause.decision();
     }
 
-    private static String categoryForExt(String ext) {
-        if (ext.isEmpty())        return "Others";                 // no extension → directly "Others"
-        if (IMAGES.contains(ext)) return "Images";
-        if (DOCS.contains(ext))   return "Documents";
-        if (AUDIOS.contains(ext)) return "Audios";
-        if (VIDEO.contains(ext))  return "Videos";
+    // Looks at the target and its "name (n).ext" copies from earlier Keep Both runs; null when dedup is off or none match
+    private static File findIdenticalCopy(File sourceFile, long size, File targetFile, Run run) {
+        if (run.digests() == null) return null;
 
-        return "Others";
+        File candidate = targetFile;
+        for (int n = 1; n <= MAX_DUPLICATE_PROBES; n++) {
+            try {
+                if (run.digests().sameContent(sourceFile.toPath(), size, candidate.toPath())) return candidate;
+            } catch (NoSuchFileException e) {
+                // only differs in case from a name that is there (case-sensitive drive)
+            } catch (IOException e) {
+                run.log().accept("[WARNING] Could not compare with: " + candidate.getAbsolutePath() + " → " + e.getMessage());
+                return null;
+            }
+            candidate = NameRegistry.copyName(targetFile, n);
+            if (!run.names().isTaken(candidate)) break;
+        }
+        return null;
     }
 
-    private static File nextAvailableName(File target){
-        if(!target.exists()) return target;
+    // "Keep Both": claim a free "name (n).ext" that no other worker is writing, then transfer into it.
+    // The copy never replaces: a name created by another program since the folder was listed just moves on to the next one.
+    private static void keepBoth(File sourceFile, File targetFile, long size, String category, Run run) throws IOException {
+        Object lock = new Object();
+        synchronized (lock) {
+            while (true) {
+                File dupFile = run.names().claimCopyName(targetFile, f -> run.engine().claim(f.toPath(), lock));
+                try {
+                    transfer(sourceFile, dupFile, size, category, false, false, run);
+                    return;
+                } catch (FileAlreadyExistsException e) {
+                    // taken behind our back; the registry has it now, so the next claim skips it
+                } finally {
+                    run.engine().release(dupFile.toPath());
+                }
+            }
+        }
+    }
 
-        String name = target.getName();
-        String base = name;
-        String ext = "";
-        int dot = name.lastIndexOf('.');
+    // A move within one drive is a rename. Large files that really have to be copied (copy, or a move
+    // to another drive) go through ChunkedTransfer; Files.move/copy handle the rest.
+    // overwrites: an Overwrite decision replaces a file that is there (journaled, and recorded in the history,
+    // whose rollback leaves such files alone)
+    private static void transfer(File sourceFile, File targetFile, long size, String category,
+                                 boolean replace, boolean overwrites, Run run) throws IOException {
+        Path source = sourceFile.toPath(), target = targetFile.toPath();
+        boolean move = "move".equalsIgnoreCase(run.action());
+        CopyOption[] options = replace ? new CopyOption[]{StandardCopyOption.REPLACE_EXISTING} : new CopyOption[0];
+        if (run.throttle() != null && run.throttle().isLimited()) throttle(source, target, size, move, run);
+        if (run.journal() != null) run.journal().intent(source, target, overwrites);
+        RunMetrics.TransferEvent event = RunMetrics.transferEvent();
+        long start = clock(run);
 
-        if(dot > 0){
-            base = name.substring(0, dot);
-            ext = name.substring(dot);
+        if (move && (size < ChunkedTransfer.LARGE_FILE_BYTES || run.devices().sameDevice(source, target.getParent()))) {
+            Files.move(source, target, options);
+        } else if (size >= ChunkedTransfer.LARGE_FILE_BYTES) {
+            copyLarge(source, target, replace, run);
+            if (move) Files.delete(source);
+        } else {
+            Files.copy(source, target, options);
         }
+        if (run.metrics() != null) run.metrics().transferred(size, System.nanoTime() - start);
+        RunMetrics.commit(event, source, target, category, run.action(), size);
+        run.names().markTaken(targetFile);
+        if (move && run.movedFrom() != null) run.movedFrom().add(source.getParent());
+
+        // History first: a file the journal has as done is always in the history (the journal flushes it first)
+        recordTransfer(source, target, size, overwrites, run);
+        if (run.journal() != null) run.journal().done(source);
 
-        int counter = 1;
-        File dupFile;
+        run.log().accept("[DETAIL] " + (move ? "Moved: " : "Copied: ") + sourceFile.getName() + " → " + targetFile.getAbsolutePath());
+        run.progress().transferred(category, size);
+    }
+
+    // A fresh RunMetrics when the run asks for one, shown over JMX from now on
+    private static RunMetrics metrics(OrganizeOptions options, Consumer<String> log) {
+        if (!options.isMetrics()) return null;
+        RunMetrics metrics = new RunMetrics();
+        metrics.publish(log);
+        return metrics;
+    }
 
-        do {
-            dupFile = new File(target.getParentFile(), base + " (" + counter + ")" + ext);
-            counter++;
-        } while(dupFile.exists());
-        return dupFile;
+    private static long clock(Run run) {
+        return run.metrics() != null ? System.nanoTime() : 0;
+    }
+
+    private static void timed(Run run, RunMetrics.Stage stage, long start) {
+        if (run.metrics() != null) run.metrics().stage(stage, System.nanoTime() - start);
+    }
+
+    // End of a run: collision counts, and the metrics summary when it collected metrics
+    private static void logCollisions(Run run) {
+        RunContext context = run.context();
+        if (context.getCollisions() == 0) return;
+        run.log().accept("[INFO] " + context.getCollisions() + " name collisions, " + (context.getCollisions() - context.getAsked())
+                + " of them settled without asking");
+    }
+
+    // A transfer the run was cancelled in: waiting for the transfer limit, or in the middle of a large copy
+    // (its temp file is gone). The source is untouched, so the file simply was not handled (like the queued
+    // ones the cancel dropped).
+    private static void stopped(File sourceFile, InterruptedIOException e, Run run) {
+        run.log().accept("[INFO] Stopped " + (e.bytesTransferred > 0 ? "in the middle of " : "before ") + sourceFile.getName() + ", left in place");
+    }
+
+    // A file that could not be transferred: logged, counted as failed (and by its error type) and journaled
+    private static void transferFailed(File sourceFile, long size, IOException e, Run run) {
+        run.log().accept("[Error]: " + sourceFile.getName() + " → " + e.getMessage());
+        run.progress().failed(size);
+        if (run.journal() != null) run.journal().failed(sourceFile.toPath());
+        if (run.metrics() != null) run.metrics().error(e);
+        RunMetrics.errorEvent(sourceFile.toPath(), e);
+    }
+
+    // Waits for the run's throttle before a transfer starts: the file's turn, and its bytes when they are
+    // copied in one go (a large copy waits per chunk in copyLarge, a rename within one drive copies nothing)
+    private static void throttle(Path source, Path target, long size, boolean move, Run run) throws InterruptedIOException {
+        TransferThrottle throttle = run.throttle();
+        long waited = throttle.file(run.context()::isCancelled);
+        if (throttle.limitsBytes() && size < ChunkedTransfer.LARGE_FILE_BYTES
+                && !(move && run.devices().sameDevice(source, target.getParent()))) {
+            waited += throttle.bytes(size, run.context()::isCancelled);
+        }
+        if (run.metrics() != null) run.metrics().stage(RunMetrics.Stage.THROTTLE, waited);
+        if (run.context().isCancelled()) throw new InterruptedIOException("cancelled while waiting for the transfer limit");
+    }
+
+    // Progress counts every chunk as it lands, then hands the file over to transferred()/failed()
+    private static void copyLarge(Path source, Path target, boolean replace, Run run) throws IOException {
+        RunProgress progress = run.progress();
+        TransferThrottle throttle = run.throttle();
+        long[] written = {0};
+        try {
+            ChunkedTransfer.copy(source, target, replace, bytes -> {
+                written[0] += bytes;
+                progress.partial(bytes);
+                if (throttle != null) {
+                    long waited = throttle.bytes(bytes, run.context()::isCancelled);
+                    if (run.metrics() != null) run.metrics().stage(RunMetrics.Stage.THROTTLE, waited);
+                }
+            }, run.context()::isCancelled);
+        } finally {
+            progress.partial(-written[0]);
+        }
+    }
+
+
+    // === Helpers ===
+    public static String extOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot == -1 || dot == fileName.length() - 1) return "";
+        return fileName.substring(dot + 1).toLowerCase();
+    }
+
+    // By extension only, with the active rules (the built-in sets above plus ~/.fileorganizer/rules.conf)
+    public static String categoryForExt(String ext) {
+        return OrganizeRules.active().categoryForExt(ext);
     }
 
     public static Map<String, Set<String>> scanExtensionsByCategory(String folderPath, boolean deepScan) {
@@ -258,55 +1192,15 @@ public class FileOrganizerLogic {
 
         if (dir == null || !dir.isDirectory()) return;
 
-        File[] files = dir.listFiles();
-
-        if (files == null) return;
-
-        for (File f : files) {
-            if (f.isFile()) {
-                String ext = extOf(f.getName());
+        try {
+            SourceWalker.walk(dir.toPath(), deepScan, (file, attrs) -> {
+                String ext = extOf(file.getFileName().toString());
                 String category = categoryForExt(ext);
-                categoryMap.get(category).add(ext);
-            } else if (deepScan) scanDirectoryForExtensions(f, true, categoryMap);
-        }
-    }
-
-    // Delete empty folders recursively (for deep scan)
-    public static void deleteEmptyFolders(File dir, Consumer<String> log) {
-        if (dir == null || !dir.isDirectory()) return;
-
-        File[] children = dir.listFiles();
-
-        if (children == null) return;
-
-        for (File child : children) {
-            if (child.isDirectory()) {
-                // Recurse first
-                deleteEmptyFolders(child, log);
-
-                // Delete if now empty
-                File[] subFiles = child.listFiles();
-                if (subFiles != null && subFiles.length == 0) {
-                    if (child.delete()) log.accept("[INFO] Deleted empty folder: " + child.getAbsolutePath());
-                    else log.accept("[WARNING] Could not delete: " + child.getAbsolutePath());
-                }
-            }
-        }
-    }
-
-    // Delete only immediate empty subfolders (for top-level scan)
-    public static void deleteEmptyFoldersTopLevel(File sourceDir, Consumer<String> log) {
-        if (sourceDir == null || !sourceDir.isDirectory()) return;
-
-        File[] children = sourceDir.listFiles(File::isDirectory);
-        if (children == null) return;
-
-        for (File child : children) {
-            File[] subFiles = child.listFiles();
-            if (subFiles != null && subFiles.length == 0) {
-                if (child.delete()) log.accept("[INFO] Deleted empty folder: " + child.getAbsolutePath());
-                else log.accept("[WARNING] Could not delete: " + child.getAbsolutePath());
-            }
+                categoryMap.computeIfAbsent(category, k -> new HashSet<>()).add(ext);
+                return true;
+            });
+        } catch (IOException e) {
+            // unreadable source: return whatever was collected so far
         }
     }
 }
@@ -0,0 +1,280 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Drop-folder mode: watches the source folder and organizes files as they arrive,
+// using the same category/extension rules as a normal run (each batch is replayed as a ScanManifest).
+//
+// - Bursts of events are debounced: a file is only handled after it has been quiet for settleMillis
+//   and its size and mtime stayed the same across two checks (i.e. it is fully written).
+// - On OVERFLOW (events were lost) the whole folder is rescanned instead; what the rescan finds goes through
+//   the same settle check, since events are lost exactly while files are arriving in bulk.
+// - State is limited to the watched folders and the files not yet handled, so memory stays flat.
+// - Each batch is a run with its own RunContext. stop() cancels the batch in progress; a batch cancelled by
+//   the collision policy ("cancel") ends the watch, as it would end a normal run.
+// Startup and overflow rescans organize everything still in the folder, so "move" is the natural
+// action here; with "copy" the overwrite handler decides what happens to files copied before.
+public class FolderWatcher implements AutoCloseable {
+
+    public static final long DEFAULT_SETTLE_MILLIS = 2000;
+
+    // Names browsers and copy tools use while a file is still being written
+    private static final Set<String> IN_PROGRESS_EXTS = Set.of("part", "partial", "crdownload", "download", "tmp");
+
+    private static final class Pending {
+        long lastEvent;
+        long size = -1;
+        long lastModified = -1;
+    }
+
+    private final Path root;
+    private final String destinationFolder, action;
+    private final boolean deepScan;
+    private final Set<String> categoriesFilter;
+    private final Map<String, Set<String>> extensionsFilter;
+    private final OrganizeOptions options;
+    private final Consumer<String> log;
+    private final BiFunction<File, boolean[], OverwriteDecision> overwriteHandler;
+    private final long settleMillis;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    private final Map<Path, Pending> pending = new HashMap<>();
+    private boolean rescanNeeded = true;           // first pass organizes what is already there
+    private volatile boolean running = true;
+    private volatile RunContext batch;             // context of the batch being organized
+    private volatile String cancelReason;          // why a batch cancelled the watch; null if none did
+
+    // categoriesFilter == null organizes all file types
+    public FolderWatcher(String sourceFolder, String destinationFolder, String action, boolean deepScan,
+                         Set<String> categoriesFilter, Map<String, Set<String>> extensionsFilter,
+                         OrganizeOptions options, long settleMillis, Consumer<String> log,
+                         BiFunction<File, boolean[], OverwriteDecision> overwriteHandler) throws IOException {
+        this.root = Path.of(sourceFolder).toAbsolutePath().normalize();
+        this.destinationFolder = destinationFolder;
+        this.action = action;
+        this.deepScan = deepScan;
+        this.categoriesFilter = categoriesFilter;
+        this.extensionsFilter = extensionsFilter;
+        this.options = options;
+        this.settleMillis = Math.max(100, settleMillis);
+        this.log = log;
+        this.overwriteHandler = overwriteHandler;
+        this.watchService = root.getFileSystem().newWatchService();
+    }
+
+    // Blocks until stop() is called (or the thread is interrupted)
+    public void run() throws IOException {
+        register(root);
+        log.accept("[INFO] Watching " + root + (deepScan ? " (including subfolders)" : "") + " for new files");
+
+        try {
+            while (running) {
+                if (rescanNeeded) rescan();
+
+                WatchKey key = watchService.poll(Math.min(settleMillis, 1000), TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    handle(key);
+                    key = watchService.poll();      // drain whatever else is queued
+                }
+
+                organizeSettledFiles();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // close() was called from another thread
+        } finally {
+            log.accept("[INFO] Stopped watching " + root);
+        }
+    }
+
+    // Also stops the batch in progress, after the file being transferred
+    public void stop() {
+        running = false;
+        RunContext current = batch;
+        if (current != null) current.cancel("stopped watching");
+    }
+
+    // Why a batch cancelled the watch (collision policy); null when it was stopped or never cancelled
+    public String getCancelReason() { return cancelReason; }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+        watchService.close();
+    }
+
+    //============================================= EVENTS ===========================================================
+
+    private void handle(WatchKey key) {
+        Path dir = watchedDirs.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                log.accept("[WARNING] Too many changes at once, rescanning " + root);
+                rescanNeeded = true;
+                continue;
+            }
+            if (dir == null) continue;
+
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_DELETE) {
+                pending.remove(path);
+                continue;
+            }
+
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                // A new subfolder may already contain files created before it was registered
+                if (deepScan && event.kind() == ENTRY_CREATE) {
+                    try {
+                        register(path);
+                        queueExisting(path);
+                    } catch (IOException e) {
+                        log.accept("[WARNING] Could not watch: " + path + " → " + e.getMessage());
+                    }
+                }
+                continue;
+            }
+
+            pending.computeIfAbsent(path, p -> new Pending()).lastEvent = System.currentTimeMillis();
+        }
+
+        // Folder deleted or no longer accessible
+        if (!key.reset()) watchedDirs.remove(key);
+    }
+
+    private void register(Path dir) throws IOException {
+        if (!deepScan) {
+            watchedDirs.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+            return;
+        }
+
+        SourceWalker.walk(dir, true, new SourceWalker.Visitor() {
+            @Override
+            public boolean onFile(Path file, BasicFileAttributes attrs) { return true; }
+
+            @Override
+            public void onSubfolder(Path sub, BasicFileAttributes attrs) { registerOne(sub); }
+        });
+        registerOne(dir);
+    }
+
+    private void registerOne(Path dir) {
+        try {
+            watchedDirs.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+        } catch (IOException e) {
+            log.accept("[WARNING] Could not watch: " + dir + " → " + e.getMessage());
+        }
+    }
+
+    private void queueExisting(Path dir) throws IOException {
+        long now = System.currentTimeMillis();
+        SourceWalker.walk(dir, true, (file, attrs) -> {
+            pending.computeIfAbsent(file, p -> new Pending()).lastEvent = now;
+            return true;
+        });
+    }
+
+    //============================================= ORGANIZE ===========================================================
+
+    // Files that have been quiet for settleMillis and did not change size/mtime since the last check
+    private void organizeSettledFiles() {
+        if (pending.isEmpty()) return;
+
+        long now = System.currentTimeMillis();
+        List<ScanManifest.Entry> ready = new ArrayList<>();
+
+        for (Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, Pending> e = it.next();
+            Pending p = e.getValue();
+            if (now - p.lastEvent < settleMillis) continue;
+
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(e.getKey(), BasicFileAttributes.class);
+            } catch (IOException gone) {
+                it.remove();
+                continue;
+            }
+            if (attrs.isDirectory()) {
+                it.remove();
+                continue;
+            }
+
+            long size = attrs.size();
+            long mtime = attrs.lastModifiedTime().toMillis();
+            if (size != p.size || mtime != p.lastModified) {
+                // Still growing (or first look): check again after another quiet period
+                p.size = size;
+                p.lastModified = mtime;
+                p.lastEvent = now;
+                continue;
+            }
+
+            it.remove();
+            if (!isInProgress(e.getKey())) ready.add(ScanManifest.entryFor(e.getKey(), size, mtime));
+        }
+
+        if (!ready.isEmpty()) {
+            log.accept("[INFO] Watch: organizing " + ready.size() + " new file(s)");
+            organize(ScanManifest.of(root, deepScan, ready, List.of()));
+        }
+    }
+
+    // Startup, or events were lost: everything in the folder waits for its quiet period, like a new file.
+    // The scan counts as the first look at its size and mtime.
+    private void rescan() {
+        rescanNeeded = false;
+        ScanManifest full = ScanManifest.build(root.toString(), deepScan, log);
+
+        long now = System.currentTimeMillis();
+        for (ScanManifest.Entry entry : full.getFiles()) {
+            Pending p = pending.computeIfAbsent(entry.path(), k -> new Pending());
+            p.lastEvent = now;
+            p.size = entry.size();
+            p.lastModified = entry.lastModified();
+        }
+
+        if (deepScan) {
+            // Re-register in case folders were created while events were being dropped
+            // (registering an already watched folder just returns its existing key)
+            for (Path dir : full.getDirectories()) registerOne(dir);
+        }
+    }
+
+    private void organize(ScanManifest files) {
+        if (!running) return;
+        RunContext context = new RunContext();
+        batch = context;
+        if (!running) context.cancel("stopped watching");     // stop() came before it could see this batch
+        options.setRunContext(context);
+        options.setScanManifest(files);
+
+        if (categoriesFilter == null) {
+            FileOrganizerLogic.moveOrCopyAllFileTypes(root.toString(), destinationFolder, action, deepScan,
+                    options, log, overwriteHandler);
+        } else {
+            FileOrganizerLogic.moveOrCopyByCategory(root.toString(), destinationFolder, action, deepScan,
+                    categoriesFilter, extensionsFilter, options, log, overwriteHandler);
+        }
+
+        batch = null;
+        if (context.isCancelled() && running) {
+            cancelReason = context.getCancelReason();
+            running = false;
+            log.accept("[WARNING] Watch cancelled (" + cancelReason + "), no more files are organized");
+        }
+    }
+
+    private static boolean isInProgress(Path file) {
+        return IN_PROGRESS_EXTS.contains(FileOrganizerLogic.extOf(file.getFileName().toString()));
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Writes every log line to a file on a background thread, so the full log of a long run
+// is kept on disk without being held in memory or in the Swing document.
+// Producers only block if the writer falls more than QUEUE_CAPACITY lines behind.
+public class LogFileSink implements AutoCloseable {
+
+    private static final int QUEUE_CAPACITY = 65_536;
+    private static final String STOP = new String("<stop>");        // identity marker, never equal to a real line
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private final Path file;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private volatile IOException failure;
+
+    public LogFileSink(Path file) throws IOException {
+        this.file = file;
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+
+        writer = new Thread(() -> writeLoop(out), "log-file-sink");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public Path getFile() { return file; }
+
+    public void write(long timeMillis, String message) {
+        if (failure != null) return;        // disk full etc.: stop logging to file, keep the run going
+        try {
+            queue.put("[" + TIME_FORMAT.format(Instant.ofEpochMilli(timeMillis)) + "] " + message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop(BufferedWriter out) {
+        List<String> batch = new ArrayList<>(1024);
+        try (out) {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, 4096);
+
+                for (String line : batch) {
+                    if (line == STOP) return;
+                    out.write(line);
+                    out.newLine();
+                }
+                out.flush();            // once per batch, not per line
+                batch.clear();
+            }
+        } catch (IOException e) {
+            failure = e;
+            queue.clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Writes out everything queued so far, then closes the file
+    @Override
+    public void close() throws IOException {
+        try {
+            if (failure == null) queue.put(STOP);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) throw failure;
+    }
+}
@@ -0,0 +1,93 @@
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Collects log lines from any thread and hands them to the GUI in batches.
+// - Lines below the display level are not kept for display (e.g. per-file DETAIL lines).
+// - At most maxLines lines wait for display; older ones are dropped, since the log area would trim them anyway.
+// - An optional LogFileSink receives every line, whatever the display level.
+// No Swing here: the GUI drains the pipeline from a timer on the EDT.
+public class LogPipeline implements Consumer<String> {
+
+    public enum Level {
+        DETAIL, INFO, WARNING, ERROR;
+
+        // Reads the "[LEVEL]" prefix the logic puts on every message; untagged messages count as INFO
+        public static Level of(String message) {
+            if (message.length() < 3 || message.charAt(0) != '[') return INFO;
+            if (message.regionMatches(true, 1, "DETAIL]", 0, 7)) return DETAIL;
+            if (message.regionMatches(true, 1, "WARNING]", 0, 8)) return WARNING;
+            if (message.regionMatches(true, 1, "ERROR]", 0, 6)) return ERROR;
+            return INFO;
+        }
+    }
+
+    public record Line(long time, Level level, String message) {}
+
+    public static final int DEFAULT_MAX_LINES = 5000;
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final int maxLines;
+    private final ArrayDeque<Line> pending = new ArrayDeque<>();       // guarded by this
+    private int dropped;                                               // guarded by this
+    private volatile Level displayLevel = Level.DETAIL;
+    private volatile LogFileSink fileSink;
+
+    public LogPipeline(int maxLines) {
+        this.maxLines = Math.max(1, maxLines);
+    }
+
+    @Override
+    public void accept(String message) {
+        long now = System.currentTimeMillis();
+        Level level = Level.of(message);
+
+        LogFileSink sink = fileSink;
+        if (sink != null) sink.write(now, message);
+
+        if (level.compareTo(displayLevel) < 0) return;
+
+        synchronized (this) {
+            if (pending.size() == maxLines) {
+                pending.pollFirst();
+                dropped++;
+            }
+            pending.addLast(new Line(now, level, message));
+        }
+    }
+
+    // Everything waiting for display, oldest first
+    public synchronized List<Line> drain() {
+        List<Line> batch = new ArrayList<>(pending);
+        pending.clear();
+        return batch;
+    }
+
+    // Number of lines dropped before display since the last call
+    public synchronized int takeDropped() {
+        int d = dropped;
+        dropped = 0;
+        return d;
+    }
+
+    public synchronized void clear() {
+        pending.clear();
+        dropped = 0;
+    }
+
+    public int getMaxLines() { return maxLines; }
+    public Level getDisplayLevel() { return displayLevel; }
+    public void setDisplayLevel(Level displayLevel) { this.displayLevel = displayLevel; }
+
+    public LogFileSink getFileSink() { return fileSink; }
+    public void setFileSink(LogFileSink fileSink) { this.fileSink = fileSink; }
+
+    public static String format(Line line) {
+        return "[" + TIME_FORMAT.format(Instant.ofEpochMilli(line.time())) + "] " + line.message();
+    }
+}
@@ -0,0 +1,106 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+// Names in use in each destination folder of a run, so "Keep Both" can hand out "name (n).ext"
+// without stat'ing name (1), name (2), ... one by one.
+//
+// - A folder is listed once, the first time a name in it is needed; names written by the run are added.
+// - The next suffix to try is remembered per base name, so 20k "IMG_0001.jpg" collisions cost
+//   one listing plus O(1) per file instead of O(n) stats per file.
+// - Names are compared case-insensitively: on a case-sensitive drive that only costs an extra suffix,
+//   on a case-insensitive one it avoids handing out a name that is already there.
+// Files created by other programs during the run are not seen; callers write "Keep Both" copies
+// without replacing, and ask again when the name turns out to be taken.
+public class NameRegistry {
+
+    private static final class Folder {
+        private final Path dir;
+        private Set<String> taken;                                  // folded names; null until listed
+        private final Map<String, Integer> nextSuffix = new HashMap<>();
+
+        Folder(Path dir) {
+            this.dir = dir;
+        }
+
+        // Called with the monitor held
+        private Set<String> taken() {
+            if (taken != null) return taken;
+            taken = new HashSet<>();
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                for (Path child : children) taken.add(fold(child.getFileName().toString()));
+            } catch (NoSuchFileException e) {
+                // not created yet: nothing taken
+            } catch (IOException e) {
+                // unreadable: start empty, the non-replacing write catches what we miss
+            }
+            return taken;
+        }
+    }
+
+    private final Map<Path, Folder> folders = new ConcurrentHashMap<>();
+
+    private Folder folder(File dir) {
+        return folders.computeIfAbsent(dir.toPath().toAbsolutePath().normalize(), Folder::new);
+    }
+
+    public boolean isTaken(File file) {
+        Folder folder = folder(file.getParentFile());
+        synchronized (folder) {
+            return folder.taken().contains(fold(file.getName()));
+        }
+    }
+
+    // Records a name written by the run; folders not listed yet will see it on disk when they are
+    public void markTaken(File file) {
+        Folder folder = folders.get(file.getParentFile().toPath().toAbsolutePath().normalize());
+        if (folder == null) return;
+        synchronized (folder) {
+            if (folder.taken != null) folder.taken.add(fold(file.getName()));
+        }
+    }
+
+    // Next free "name (n).ext" next to target, reserved for the caller.
+    // accept may still turn a free name down (e.g. another worker is writing it); the next suffix is tried then.
+    public File claimCopyName(File target, Predicate<File> accept) {
+        Folder folder = folder(target.getParentFile());
+        String key = fold(target.getName());
+
+        synchronized (folder) {
+            Set<String> taken = folder.taken();
+            int n = folder.nextSuffix.getOrDefault(key, 1);
+            File candidate;
+            while (true) {
+                candidate = copyName(target, n++);
+                if (!taken.contains(fold(candidate.getName())) && accept.test(candidate)) break;
+            }
+            taken.add(fold(candidate.getName()));
+            folder.nextSuffix.put(key, n);
+            return candidate;
+        }
+    }
+
+    // "name.ext" → "name (n).ext"
+    public static File copyName(File target, int counter) {
+        String name = target.getName();
+        String base = name;
+        String ext = "";
+        int dot = name.lastIndexOf('.');
+
+        if (dot > 0) {
+            base = name.substring(0, dot);
+            ext = name.substring(dot);
+        }
+        return new File(target.getParentFile(), base + " (" + counter + ")" + ext);
+    }
+
+    private static String fold(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,105 @@
+import java.nio.file.Path;
+import java.util.Set;
+
+// Tuning knobs for a single organize run.
+// The "what" (action, scan level, filters) stays on the FileOrganizerLogic entry points;
+// this class only carries "how" the run is executed.
+public class OrganizeOptions {
+
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int MAX_PARALLELISM = 64;
+
+    // Date subfolders under each category folder: none, Images/2024, or Images/2024/05
+    public enum DateFolders {
+        NONE(null), YEAR("{yyyy}"), MONTH("{yyyy}/{MM}");
+
+        private final String template;
+
+        DateFolders(String template) { this.template = template; }
+
+        // What is added below the category folder; null for NONE
+        public String template() { return template; }
+    }
+
+    private int parallelism = 1;            // 1 = sequential (files are processed on the calling thread)
+    private ScanManifest scanManifest;      // optional: reuse an earlier scan instead of walking the source again
+    private RunProgress progress;           // optional: counters the caller polls while the run is going
+    private ContentDigests contentDigests;  // optional: skip files whose content is already at the destination
+    private Path journalFile;               // optional: write-ahead journal, so an interrupted run can be resumed
+    private Path historyFile;               // optional: record of what the run did, so it can be rolled back
+    private boolean contentSniffing;        // classify files without a known extension by their first bytes
+    private DateFolders dateFolders = DateFolders.NONE;
+    private boolean exifDates = true;       // photos are dated by their EXIF capture date, not their mtime
+    private Set<Path> movedFrom;            // optional: collects the source folders files were moved out of
+    private CollisionPolicy collisionPolicy = CollisionPolicy.ASK;
+    private RunContext runContext;          // optional: lets the caller cancel the run from another thread
+    private boolean metrics;                // time the stages of the run (RunMetrics), logged at the end
+    private TransferThrottle throttle;      // optional: bandwidth and files/s limits, may change during the run
+
+    public OrganizeOptions() {}
+
+    public OrganizeOptions(int parallelism) {
+        setParallelism(parallelism);
+    }
+
+    public int getParallelism() { return parallelism; }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, Math.min(parallelism, MAX_PARALLELISM));
+    }
+
+    public ScanManifest getScanManifest() { return scanManifest; }
+
+    // Only used when it was built for the same source folder and scan level as the run
+    public void setScanManifest(ScanManifest scanManifest) { this.scanManifest = scanManifest; }
+
+    public RunProgress getProgress() { return progress; }
+    public void setProgress(RunProgress progress) { this.progress = progress; }
+
+    public ContentDigests getContentDigests() { return contentDigests; }
+
+    // null turns duplicate detection off (only names are compared, as before)
+    public void setContentDigests(ContentDigests contentDigests) { this.contentDigests = contentDigests; }
+
+    public Path getJournalFile() { return journalFile; }
+
+    // The journal is deleted when the run ends; one that is left over belongs to a run that was killed
+    public void setJournalFile(Path journalFile) { this.journalFile = journalFile; }
+
+    public boolean isContentSniffing() { return contentSniffing; }
+    public void setContentSniffing(boolean contentSniffing) { this.contentSniffing = contentSniffing; }
+
+    public DateFolders getDateFolders() { return dateFolders; }
+    public void setDateFolders(DateFolders dateFolders) { this.dateFolders = dateFolders == null ? DateFolders.NONE : dateFolders; }
+
+    public boolean isExifDates() { return exifDates; }
+    public void setExifDates(boolean exifDates) { this.exifDates = exifDates; }
+
+    public Set<Path> getMovedFrom() { return movedFrom; }
+
+    // Must be thread-safe (e.g. ConcurrentHashMap.newKeySet()); feeds EmptyFolderCleaner.forEmptied
+    public void setMovedFrom(Set<Path> movedFrom) { this.movedFrom = movedFrom; }
+
+    public CollisionPolicy getCollisionPolicy() { return collisionPolicy; }
+
+    // Decides collisions before the overwrite handler is asked; on top of the rules file's "conflict" statements
+    public void setCollisionPolicy(CollisionPolicy collisionPolicy) {
+        this.collisionPolicy = collisionPolicy == null ? CollisionPolicy.ASK : collisionPolicy;
+    }
+
+    public RunContext getRunContext() { return runContext; }
+
+    // A fresh context per run: once cancelled it stays cancelled
+    public void setRunContext(RunContext runContext) { this.runContext = runContext; }
+
+    public TransferThrottle getThrottle() { return throttle; }
+    public void setThrottle(TransferThrottle throttle) { this.throttle = throttle; }
+
+    public boolean isMetrics() { return metrics; }
+    public void setMetrics(boolean metrics) { this.metrics = metrics; }
+
+    public Path getHistoryFile() { return historyFile; }
+
+    // Kept after the run (unless it transferred nothing) until the run is rolled back
+    public void setHistoryFile(Path historyFile) { this.historyFile = historyFile; }
+}
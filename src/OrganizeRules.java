@@ -0,0 +1,423 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// Where each file goes: its category and the folder inside the destination.
+//
+// The built-in extension lists (FileOrganizerLogic.IMAGES, DOCS, ...) can be extended or overridden by a
+// rules file (~/.fileorganizer/rules.conf, or --rules FILE), one statement per line, '#' lines are comments:
+//
+//   category Ebooks: epub mobi azw3          these extensions go to Ebooks (a new category is fine;
+//   category Images: heic webp               an extension listed again moves to the later category)
+//   folder Images: Images/{yyyy}/{MM}        folder of a category inside the destination (default: its name);
+//                                            {yyyy} {MM} {dd} come from the file's date
+//   rule name=Screenshot* -> Screenshots     checked in order before the extension lists, first match wins;
+//   rule regex=^IMG_\d{4} size>5MB -> Images folder Camera/{yyyy}
+//   rule ext=pdf,docx older=365d -> Documents folder Documents/Archive
+//   conflict Images: skip-if-same overwrite-if-newer keep-both
+//                                            what to do when a name is taken (see CollisionPolicy);
+//                                            "conflict *:" for every category without its own
+//
+// Rule conditions (all must hold): name=GLOB (case-insensitive), regex=REGEX (searched in the file name),
+// ext=a,b,c, size>N / size<N (B, KB, MB, GB), older=N / newer=N (d = days, h = hours, by last-modified).
+//
+// Everything is compiled once: the extension lists into one hash map from extension to a shared Target,
+// name conditions into precompiled patterns. classify() allocates nothing for the common "extension
+// only" case; folder names with dates are rendered once per day and template.
+public final class OrganizeRules {
+
+    public static final String OTHERS = "Others";
+
+    // Category and folder template of a file; shared between all files that land in the same place
+    public static final class Target {
+        private final String category;
+        private final Template folder;
+
+        private Target(String category, Template folder) {
+            this.category = category;
+            this.folder = folder;
+        }
+
+        public String category() { return category; }
+
+        // Folder inside the destination, relative, with '/' separators; time is the file's date in epoch millis
+        public String folder(long time) { return folder.render(time); }
+
+        public boolean isDated() { return folder.dated; }
+    }
+
+    private final Map<String, Target> byExtension;         // exact extension → target
+    private final Map<String, Target> byCategory;          // category → target with the category's own folder
+    private final Target others;
+    private final Rule[] rules;                             // checked in order before byExtension
+    private final Set<String> categories;                   // in the order they were defined
+    private final Path source;                              // null = built-in rules
+    private final CollisionPolicy collisions;               // from "conflict" statements
+
+    private static volatile OrganizeRules active = defaults();
+
+    private OrganizeRules(Map<String, Target> byExtension, Map<String, Target> byCategory, Target others, Rule[] rules,
+                          Set<String> categories, Path source, CollisionPolicy collisions) {
+        this.byExtension = byExtension;
+        this.byCategory = byCategory;
+        this.others = others;
+        this.rules = rules;
+        this.categories = Collections.unmodifiableSet(categories);
+        this.source = source;
+        this.collisions = collisions;
+    }
+
+    //============================================= LOOKUP ===========================================================
+
+    // Rules used by runs and scans started from now on
+    public static OrganizeRules active() { return active; }
+
+    public static void setActive(OrganizeRules rules) { active = Objects.requireNonNull(rules); }
+
+    public static Path defaultLocation() {
+        return Path.of(System.getProperty("user.home"), ".fileorganizer", "rules.conf");
+    }
+
+    // ext is lower case without the dot, as returned by FileOrganizerLogic.extOf
+    public Target classify(String fileName, String ext, long size, long lastModified) {
+        for (Rule rule : rules) {
+            if (rule.matches(fileName, ext, size, lastModified)) return rule.target;
+        }
+        return forExtension(ext);
+    }
+
+    // Category by extension alone (what the scan shows before any name/size/date rule is applied)
+    public String categoryForExt(String ext) {
+        return forExtension(ext).category;
+    }
+
+    private Target forExtension(String ext) {
+        if (ext.isEmpty()) return others;
+        Target target = byExtension.get(ext);
+        return target != null ? target : others;
+    }
+
+    // Target of a category decided earlier (a resumed run): the category's folder, or one named after a
+    // category these rules no longer have
+    public Target forCategory(String category) {
+        Target target = byCategory.get(category);
+        return target != null ? target : new Target(category, Template.compile(category));
+    }
+
+    // false for extensions that only end up in "Others" because no category lists them
+    public boolean knowsExtension(String ext) {
+        return byExtension.containsKey(ext);
+    }
+
+    // Every category a file can end up in, "Others" last
+    public Set<String> categories() { return categories; }
+
+    // Rules file these came from; null for the built-in ones
+    public Path getSource() { return source; }
+
+    // Collision policies set in the rules file (CollisionPolicy.ASK when there are none)
+    public CollisionPolicy collisions() { return collisions; }
+
+    //============================================= BUILD ===========================================================
+
+    public static OrganizeRules defaults() {
+        return new Builder(null).build();
+    }
+
+    public static OrganizeRules load(Path file) throws IOException {
+        Builder builder = new Builder(file);
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = in.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                try {
+                    builder.statement(line);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + ":" + number + ": " + e.getMessage());
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    // Same rules with every folder that has no date field of its own split by date underneath,
+    // e.g. suffix "{yyyy}/{MM}": Images → Images/2024/05. Folders already using date fields are kept.
+    public OrganizeRules withDateFolders(String suffix) {
+        Map<Target, Target> dated = new IdentityHashMap<>();
+        java.util.function.UnaryOperator<Target> split = t -> t.folder.dated ? t
+                : dated.computeIfAbsent(t, old -> new Target(old.category, Template.compile(old.folder.text + "/" + suffix)));
+
+        Map<String, Target> byExt = new HashMap<>(byExtension.size() * 2);
+        byExtension.forEach((ext, target) -> byExt.put(ext, split.apply(target)));
+        Map<String, Target> byCat = new HashMap<>();
+        byCategory.forEach((category, target) -> byCat.put(category, split.apply(target)));
+        Rule[] splitRules = new Rule[rules.length];
+        for (int i = 0; i < rules.length; i++) splitRules[i] = new Rule(rules[i].conditions(), split.apply(rules[i].target()));
+        return new OrganizeRules(byExt, byCat, split.apply(others), splitRules, categories, source, collisions);
+    }
+
+    private static final class Builder {
+        private final Path source;
+        private final Map<String, String> extToCategory = new HashMap<>();
+        private final Map<String, String> folders = new HashMap<>();
+        private final LinkedHashSet<String> categories = new LinkedHashSet<>();
+        private final List<PendingRule> rules = new ArrayList<>();
+        private CollisionPolicy collisions = CollisionPolicy.ASK;
+
+        private record PendingRule(Condition[] when, String category, String folder) {}
+
+        Builder(Path source) {
+            this.source = source;
+            extensions("Images", FileOrganizerLogic.IMAGES);
+            extensions("Documents", FileOrganizerLogic.DOCS);
+            extensions("Audios", FileOrganizerLogic.AUDIOS);
+            extensions("Videos", FileOrganizerLogic.VIDEO);
+        }
+
+        private void extensions(String category, Collection<String> exts) {
+            categories.add(category);
+            for (String ext : exts) extToCategory.put(ext, category);
+        }
+
+        void statement(String line) {
+            if (line.startsWith("category ")) {
+                String[] parts = split(line.substring(9), "category NAME: ext ext ...");
+                List<String> exts = new ArrayList<>();
+                for (String ext : parts[1].split("[\\s,]+")) {
+                    ext = ext.replaceFirst("^\\.", "").toLowerCase(Locale.ROOT);
+                    if (!ext.isEmpty()) exts.add(ext);
+                }
+                extensions(name(parts[0]), exts);
+            } else if (line.startsWith("folder ")) {
+                String[] parts = split(line.substring(7), "folder NAME: template");
+                String category = name(parts[0]);
+                Template.check(parts[1]);
+                categories.add(category);
+                folders.put(category, parts[1]);
+            } else if (line.startsWith("rule ")) {
+                rule(line.substring(5).trim());
+            } else if (line.startsWith("conflict ")) {
+                String[] parts = split(line.substring(9), "conflict NAME: policy");
+                collisions = parts[0].equals("*") ? collisions.withDefault(parts[1]) : collisions.withCategory(name(parts[0]), parts[1]);
+            } else {
+                throw new IllegalArgumentException("expected 'category', 'folder', 'rule' or 'conflict': " + line);
+            }
+        }
+
+        private void rule(String spec) {
+            int arrow = spec.lastIndexOf("->");
+            if (arrow < 0) throw new IllegalArgumentException("rule needs '-> CATEGORY': " + spec);
+
+            List<Condition> when = new ArrayList<>();
+            for (String token : spec.substring(0, arrow).trim().split("\\s+")) {
+                if (!token.isEmpty()) when.add(Condition.parse(token));
+            }
+            if (when.isEmpty()) throw new IllegalArgumentException("rule has no conditions: " + spec);
+
+            String[] then = spec.substring(arrow + 2).trim().split("\\s+folder\\s+", 2);
+            String category = name(then[0]);
+            String folder = then.length > 1 ? then[1].trim() : null;
+            if (folder != null) Template.check(folder);
+
+            categories.add(category);
+            rules.add(new PendingRule(when.toArray(new Condition[0]), category, folder));
+        }
+
+        OrganizeRules build() {
+            categories.remove(OTHERS);
+            categories.add(OTHERS);
+
+            // One Target per category (and per rule with its own folder), shared by every lookup
+            Map<String, Target> targets = new HashMap<>();
+            for (String category : categories) {
+                targets.put(category, new Target(category, Template.compile(folders.getOrDefault(category, category))));
+            }
+
+            Map<String, Target> byExtension = new HashMap<>(extToCategory.size() * 2);
+            extToCategory.forEach((ext, category) -> byExtension.put(ext, targets.get(category)));
+
+            Rule[] compiled = new Rule[rules.size()];
+            for (int i = 0; i < compiled.length; i++) {
+                PendingRule r = rules.get(i);
+                Target target = r.folder() == null ? targets.get(r.category()) : new Target(r.category(), Template.compile(r.folder()));
+                compiled[i] = new Rule(r.when(), target);
+            }
+            return new OrganizeRules(byExtension, targets, targets.get(OTHERS), compiled, categories, source, collisions);
+        }
+
+        private static String[] split(String text, String expected) {
+            int colon = text.indexOf(':');
+            if (colon <= 0) throw new IllegalArgumentException("expected " + expected);
+            return new String[]{text.substring(0, colon).trim(), text.substring(colon + 1).trim()};
+        }
+
+        // A category is a folder name: no separators, nothing that climbs out of the destination
+        private static String name(String category) {
+            category = category.trim();
+            if (category.isEmpty() || category.matches(".*[/\\\\:*?\"<>|].*") || category.equals(".") || category.equals("..")) {
+                throw new IllegalArgumentException("not a valid category name: '" + category + "'");
+            }
+            return category;
+        }
+    }
+
+    //============================================= RULES ===========================================================
+
+    private record Rule(Condition[] conditions, Target target) {
+        boolean matches(String fileName, String ext, long size, long lastModified) {
+            for (Condition c : conditions) {
+                if (!c.test(fileName, ext, size, lastModified)) return false;
+            }
+            return true;
+        }
+    }
+
+    private abstract static class Condition {
+        abstract boolean test(String fileName, String ext, long size, long lastModified);
+
+        static Condition parse(String token) {
+            if (token.startsWith("name=")) return new NameCondition(globToRegex(token.substring(5)), true);
+            if (token.startsWith("regex=")) {
+                try {
+                    return new NameCondition(Pattern.compile(token.substring(6)), false);
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("bad regex: " + e.getDescription());
+                }
+            }
+            if (token.startsWith("ext=")) {
+                Set<String> exts = new HashSet<>();
+                for (String ext : token.substring(4).split(",")) exts.add(ext.replaceFirst("^\\.", "").toLowerCase(Locale.ROOT));
+                return new Condition() {
+                    boolean test(String fileName, String ext, long size, long lastModified) { return exts.contains(ext); }
+                };
+            }
+            if (token.startsWith("size>") || token.startsWith("size<")) {
+                long limit = parseBytes(token.substring(5));
+                boolean larger = token.charAt(4) == '>';
+                return new Condition() {
+                    boolean test(String fileName, String ext, long size, long lastModified) { return larger ? size > limit : size < limit; }
+                };
+            }
+            if (token.startsWith("older=") || token.startsWith("newer=")) {
+                long age = millis(token.substring(6));
+                boolean older = token.startsWith("older=");
+                return new Condition() {
+                    boolean test(String fileName, String ext, long size, long lastModified) {
+                        long fileAge = System.currentTimeMillis() - lastModified;
+                        return older ? fileAge > age : fileAge < age;
+                    }
+                };
+            }
+            throw new IllegalArgumentException("unknown condition: " + token);
+        }
+
+        private static long millis(String value) {
+            String v = value.trim().toLowerCase(Locale.ROOT);
+            long unit = v.endsWith("h") ? 3_600_000L : 86_400_000L;
+            v = v.replaceFirst("[dh]$", "");
+            try {
+                return Math.round(Double.parseDouble(v) * unit);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bad age (expected e.g. 30d or 12h): " + value);
+            }
+        }
+
+        private static Pattern globToRegex(String glob) {
+            StringBuilder regex = new StringBuilder("^");
+            for (char c : glob.toCharArray()) {
+                switch (c) {
+                    case '*' -> regex.append(".*");
+                    case '?' -> regex.append('.');
+                    default -> regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return Pattern.compile(regex.append('$').toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        }
+    }
+
+    // One Matcher per worker thread, reset for every file name
+    private static final class NameCondition extends Condition {
+        private final ThreadLocal<Matcher> matcher;
+        private final boolean whole;
+
+        NameCondition(Pattern pattern, boolean whole) {
+            this.matcher = ThreadLocal.withInitial(() -> pattern.matcher(""));
+            this.whole = whole;
+        }
+
+        boolean test(String fileName, String ext, long size, long lastModified) {
+            Matcher m = matcher.get().reset(fileName);
+            return whole ? m.matches() : m.find();
+        }
+    }
+
+    // "5MB", "1.5GB", "800KB", "512" (B, KB, MB, GB; 1 KB = 1024 B)
+    static long parseBytes(String value) {
+        String v = value.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (v.endsWith("KB")) unit = 1024L;
+        else if (v.endsWith("MB")) unit = 1024L * 1024;
+        else if (v.endsWith("GB")) unit = 1024L * 1024 * 1024;
+        v = v.replaceFirst("[KMG]?B$", "");
+        try {
+            return Math.round(Double.parseDouble(v) * unit);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad size: " + value);
+        }
+    }
+
+    //============================================= TEMPLATES ===========================================================
+
+    // "Images/{yyyy}/{MM}": fixed text plus date fields, rendered once per (template, day)
+    private static final class Template {
+        private static final Pattern FIELD = Pattern.compile("\\{(yyyy|MM|dd)}");
+
+        private final String text;
+        private final boolean dated;
+        private final Map<Long, String> byDay;               // epoch day → rendered folder
+        private final ZoneId zone = ZoneId.systemDefault();
+
+        private Template(String text) {
+            this.text = text;
+            this.dated = FIELD.matcher(text).find();
+            this.byDay = dated ? new ConcurrentHashMap<>() : null;
+        }
+
+        static Template compile(String text) {
+            return new Template(text.replace('\\', '/').replaceAll("/+$", ""));
+        }
+
+        // Templates stay inside the destination and only know {yyyy} {MM} {dd}
+        static void check(String text) {
+            String t = text.replace('\\', '/');
+            if (t.isEmpty() || t.startsWith("/") || t.matches("^[A-Za-z]:.*")) throw new IllegalArgumentException("folder must be relative: " + text);
+            for (String part : t.split("/")) {
+                if (part.equals("..") || part.equals(".")) throw new IllegalArgumentException("folder cannot contain '" + part + "': " + text);
+            }
+            String rest = FIELD.matcher(t).replaceAll("");
+            if (rest.contains("{") || rest.contains("}")) throw new IllegalArgumentException("unknown field in folder (use {yyyy} {MM} {dd}): " + text);
+        }
+
+        String render(long time) {
+            if (!dated) return text;
+            LocalDate date = LocalDate.ofInstant(Instant.ofEpochMilli(time), zone);
+            return byDay.computeIfAbsent(date.toEpochDay(), day -> text
+                    .replace("{yyyy}", String.format("%04d", date.getYear()))
+                    .replace("{MM}", String.format("%02d", date.getMonthValue()))
+                    .replace("{dd}", String.format("%02d", date.getDayOfMonth())));
+        }
+    }
+}
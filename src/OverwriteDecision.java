@@ -0,0 +1,5 @@
+// What to do when the target file already exists.
+// Kept outside FileOrganizerController so the logic (and the headless CLI) never loads Swing classes.
+public enum OverwriteDecision {
+    OVERWRITE, KEEP_BOTH, SKIP, CANCEL
+}
@@ -0,0 +1,76 @@
+import java.io.File;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+// State shared by everything working on one run: whether it was cancelled (and why), the "Apply to all"
+// decision of the overwrite prompt, and how name collisions were settled.
+//
+// Any thread may cancel (the GUI's Stop button, a collision policy, the prompt's Cancel): the walk stops at the
+// next file, queued transfers are dropped, and a large copy stops after the chunk it is writing, removing its
+// temp file and leaving the source alone. Files already transferred stay where they are.
+//
+// isCancelled() is a plain volatile read, so workers check it per file (and per chunk) without taking a lock;
+// only the overwrite prompt is serialized, so that one dialog is shown at a time.
+public final class RunContext {
+
+    private final AtomicReference<String> cancelReason = new AtomicReference<>();         // null = running
+    private final AtomicReference<OverwriteDecision> applyToAll = new AtomicReference<>();  // null = ask each time
+    private final LongAdder collisions = new LongAdder(), asked = new LongAdder();
+    private final Object promptLock = new Object();
+
+    //============================================= CANCEL ===========================================================
+
+    // true for the first cancel only; later ones keep the first reason
+    public boolean cancel(String reason) {
+        return cancelReason.compareAndSet(null, Objects.requireNonNull(reason));
+    }
+
+    public boolean isCancelled() { return cancelReason.get() != null; }
+
+    // Why the run was cancelled; null while it is running
+    public String getCancelReason() { return cancelReason.get(); }
+
+    //============================================= COLLISIONS ===========================================================
+
+    // "Apply to all" answer of the prompt; null until one was given
+    public OverwriteDecision getApplyToAll() { return applyToAll.get(); }
+
+    // A name collision settled without the prompt (by the collision policy)
+    public void decided() { collisions.increment(); }
+
+    // Asks the handler about targetFile, one prompt at a time. Without asking: CANCEL once the run is
+    // cancelled, the "Apply to all" decision once there is one (also when it was given while this worker waited).
+    public OverwriteDecision ask(File targetFile, BiFunction<File, boolean[], OverwriteDecision> handler, Consumer<String> log) {
+        collisions.increment();
+        OverwriteDecision known = known();
+        if (known != null) return known;
+
+        synchronized (promptLock) {
+            known = known();
+            if (known != null) return known;
+
+            asked.increment();
+            boolean[] applyAll = {false};
+            OverwriteDecision decision = handler.apply(targetFile, applyAll);
+
+            if (decision == OverwriteDecision.CANCEL) {
+                if (cancel("cancelled by the user")) log.accept("[INFO] Operation cancelled by the user. Stopping further processing");
+            } else if (applyAll[0]) {
+                applyToAll.set(decision);
+                log.accept("[INFO] Applied decision to all remaining files: " + decision);
+            }
+            return decision;
+        }
+    }
+
+    private OverwriteDecision known() {
+        return isCancelled() ? OverwriteDecision.CANCEL : applyToAll.get();
+    }
+
+    // Name collisions met so far, and how many of them needed the prompt (the handler)
+    public long getCollisions() { return collisions.sum(); }
+    public long getAsked() { return asked.sum(); }
+}
@@ -0,0 +1,74 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Marks a run file (history, journal) as being written. The writer holds an OS file lock for as long as it has
+// the file open, and the OS drops it when the process ends, however it ends: a file nobody holds belongs to a
+// run that is over (finished, or killed and waiting to be resumed), one that is held to a run still going,
+// in this process or another one (a CLI or cron run next to the GUI).
+//
+// The lock covers one byte far past the data, so it never keeps anyone from reading the file (locks are
+// mandatory on Windows). Files of this process are tracked in HELD and never probed through a second channel:
+// on POSIX systems closing that channel would drop the writer's lock.
+final class RunFileLock {
+
+    private static final long POSITION = Long.MAX_VALUE - 1;
+    private static final Set<Path> HELD = ConcurrentHashMap.newKeySet();
+
+    private final Path key;
+    private final FileLock lock;
+
+    private RunFileLock(Path key, FileLock lock) {
+        this.key = key;
+        this.lock = lock;
+    }
+
+    // Locks file through the writer's own channel; IOException when another run holds it
+    static RunFileLock acquire(FileChannel channel, Path file) throws IOException {
+        Path key = key(file);
+        if (!HELD.add(key)) throw new IOException("In use by another run: " + file);
+        try {
+            FileLock lock = channel.tryLock(POSITION, 1, false);
+            if (lock == null) throw new IOException("In use by another run: " + file);
+            return new RunFileLock(key, lock);
+        } catch (IOException | RuntimeException e) {
+            HELD.remove(key);
+            throw e;
+        }
+    }
+
+    // The writer is done with the file (its channel may already be closed, which released the lock too)
+    void release() {
+        try {
+            if (lock.isValid()) lock.release();
+        } catch (IOException e) {
+            // closed with its channel
+        } finally {
+            HELD.remove(key);
+        }
+    }
+
+    // true while a writer of this or another process holds file
+    static boolean isInUse(Path file) {
+        if (HELD.contains(key(file))) return true;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock(POSITION, 1, false);
+            if (lock == null) return true;
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        } catch (IOException e) {
+            return false;                   // gone, or not ours to write: no run is writing it through us
+        }
+    }
+
+    private static Path key(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// What a finished organize run did, so it can be rolled back: every file that was moved/copied
+// (with the size and mtime it had at the destination) and every category folder the run created.
+//
+// Same layout as RunPlan: a gzip'ed stream of small records, paths relative to the source / destination,
+// streamed while the run goes so memory does not grow with the number of files. Unlike the journal it is
+// kept after the run, in ~/.fileorganizer/history/; rolling back only reads this file, the destination
+// is never rescanned. The writer holds a RunFileLock, so the history of a run that is still going is never
+// offered for rolling back.
+//
+// The run's journal flushes the history whenever it writes a batch (gzip sync flush), and a record written
+// FLUSH_MILLIS after the last flush flushes it too (runs without a journal), so a killed run leaves a history
+// that reads up to about its last batch. A resumed run takes over the records of that history (carryOver) and
+// records the rest of the run behind them, so one history rolls back the whole run.
+//
+//   header : MAGIC, VERSION, source, destination, action, createdAt
+//   FOLDER : category folder created by the run
+//   FILE   : source path, target path, size, target mtime, replaced (it overwrote a file that was there)
+//   END    : files, folders
+public final class RunHistory {
+
+    private static final int MAGIC = 0x4648_5354;       // "FHST"
+    private static final int VERSION = 1;
+    private static final int KEEP_RUNS = 50;
+    private static final long FLUSH_MILLIS = 250;
+
+    private static final byte FOLDER = 1, FILE = 2, END = 0;
+
+    public record Header(Path source, Path destination, String action, long createdAt) {}
+
+    public record Summary(long files, long folders, boolean complete) {}
+
+    // One FILE record, paths already resolved against the header folders. replaced: the transfer overwrote
+    // a file that was at the target, which is gone for good
+    public record Entry(Path source, Path target, long size, long lastModified, boolean replaced) {}
+
+    private RunHistory() {}
+
+    // Default place for the history of a new run: ~/.fileorganizer/history/run-<time>.hist.
+    // Makes room first: only the last KEEP_RUNS runs can be rolled back.
+    public static Path newLocation() {
+        prune(list(), KEEP_RUNS - 1);
+        String name = "run-" + java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")) + ".hist";
+        return historyFolder().resolve(name);
+    }
+
+    public static Path historyFolder() {
+        return Path.of(System.getProperty("user.home"), ".fileorganizer", "history");
+    }
+
+    // Runs that can still be rolled back, oldest first (not those still being written)
+    public static List<Path> list() {
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(historyFolder(), "*.hist")) {
+            for (Path child : children) {
+                if (!RunFileLock.isInUse(child)) found.add(child);
+            }
+        } catch (IOException e) {
+            // no folder yet: no history
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    // Deletes the oldest of files (oldest first) until at most keep are left
+    static void prune(List<Path> files, int keep) {
+        for (int i = 0; i < files.size() - keep; i++) {
+            try {
+                Files.deleteIfExists(files.get(i));
+            } catch (IOException e) {
+                // tried again before the next run
+            }
+        }
+    }
+
+    //============================================= WRITE ===========================================================
+
+    // Thread-safe: the workers record their own transfers
+    public static final class Writer implements Closeable {
+        private final Path file;
+        private final Header header;
+        private final DataOutputStream out;
+        private final FileChannel channel;
+        private final RunFileLock lock;
+        private long files, folders;
+        private long flushed = System.nanoTime();
+        private boolean closed;
+
+        public Writer(Path file, Header header) throws IOException {
+            this.file = file;
+            this.header = header;
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                lock = RunFileLock.acquire(channel, file);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Channels.newOutputStream(channel), 1 << 16, true), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(header.source().toString());
+            out.writeUTF(header.destination().toString());
+            out.writeUTF(header.action());
+            out.writeLong(header.createdAt());
+        }
+
+        public Path getFile() { return file; }
+
+        public synchronized void folder(Path dir) throws IOException {
+            out.writeByte(FOLDER);
+            out.writeUTF(relative(header.destination(), dir));
+            folders++;
+        }
+
+        public synchronized void file(Path source, Path target, long size, long lastModified, boolean replaced) throws IOException {
+            out.writeByte(FILE);
+            out.writeUTF(relative(header.source(), source));
+            out.writeUTF(relative(header.destination(), target));
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeBoolean(replaced);
+            files++;
+            if (System.nanoTime() - flushed > FLUSH_MILLIS * 1_000_000) flush();
+        }
+
+        public synchronized long getFiles() { return files; }
+
+        // Puts everything recorded so far on disk, readable without the END record
+        public synchronized void flush() throws IOException {
+            if (closed) return;
+            out.flush();
+            channel.force(false);
+            flushed = System.nanoTime();
+        }
+
+        // Records what the history of an interrupted run holds (as far as it can be read), for its resumed run.
+        // Targets found there are removed from unrecorded.
+        public synchronized Summary carryOver(Path earlier, Set<Path> unrecorded) throws IOException {
+            Header old = readHeader(earlier);
+            if (!old.source().equals(header.source()) || !old.destination().equals(header.destination())) {
+                throw new IOException("History of another run: " + earlier);
+            }
+            List<Path> dirs = new ArrayList<>();
+            Summary summary = read(earlier, e -> {
+                file(e.source(), e.target(), e.size(), e.lastModified(), e.replaced());
+                unrecorded.remove(e.target());
+            }, dirs);
+            for (Path dir : dirs) folder(dir);
+            return summary;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                out.writeByte(END);
+                out.writeLong(files);
+                out.writeLong(folders);
+            } finally {
+                try {
+                    out.close();
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    //============================================= READ ===========================================================
+
+    public interface Visitor {
+        void onFile(Entry entry) throws IOException;
+    }
+
+    public static Header readHeader(Path file) throws IOException {
+        try (DataInputStream in = open(file)) {
+            return header(in, file);
+        }
+    }
+
+    // Streams the FILE records through the visitor and collects the FOLDER records into folders.
+    // A history cut short (the run was killed) is read up to where it ends; complete() tells which it was.
+    public static Summary read(Path file, Visitor visitor, List<Path> folders) throws IOException {
+        try (DataInputStream in = open(file)) {
+            Header header = header(in, file);
+            long files = 0, folderCount = 0;
+
+            while (true) {
+                byte tag;
+                try {
+                    tag = in.readByte();
+                    switch (tag) {
+                        case FOLDER -> {
+                            Path dir = header.destination().resolve(in.readUTF());
+                            folderCount++;
+                            if (folders != null) folders.add(dir);
+                        }
+                        case FILE -> {
+                            Entry entry = new Entry(header.source().resolve(in.readUTF()), header.destination().resolve(in.readUTF()),
+                                    in.readLong(), in.readLong(), in.readBoolean());
+                            files++;
+                            visitor.onFile(entry);
+                        }
+                        case END -> {
+                            return new Summary(in.readLong(), in.readLong(), true);
+                        }
+                        default -> throw new IOException("Not a valid run history (record " + tag + "): " + file);
+                    }
+                } catch (EOFException e) {
+                    return new Summary(files, folderCount, false);
+                }
+            }
+        }
+    }
+
+    private static DataInputStream open(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file), 1 << 16), 1 << 16));
+    }
+
+    private static Header header(DataInputStream in, Path file) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Not a run history: " + file);
+        return new Header(Path.of(in.readUTF()), Path.of(in.readUTF()), in.readUTF(), in.readLong());
+    }
+
+    private static String relative(Path root, Path path) {
+        return root.relativize(path.toAbsolutePath().normalize()).toString();
+    }
+}
@@ -0,0 +1,391 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Write-ahead journal of an organize run, so a run killed halfway (crash, power cut, kill -9) can be resumed.
+//
+//   HEADER     source, destination, action, scan level, filters, date folders and content sniffing of the run
+//   QUEUED     a file passed the filters (source, size, mtime, category), written by the walk when it hands
+//              the file over; a file whose content decides is queued with no category ("") first and again
+//              once a worker classified it
+//   SCAN_DONE  every file of the run has been QUEUED
+//   INTENT     about to transfer a file to this exact target (after any overwrite decision), and whether
+//              it overwrites a file that was there
+//   DONE / SKIPPED / FAILED
+//   HISTORY    the RunHistory the run records into (a resumed run records into a new one, which takes over
+//              the records of the one before)
+//
+// Records are appended to a buffer and written + fsync'ed in batches every SYNC_MILLIS by a background
+// thread, so the copy path only pays for a synchronized append. The run's history is flushed before each
+// batch, so every file the journal has as DONE is in the history too. The price is that the last few records
+// can be lost in a crash; replay() is written for that: an INTENT without DONE is checked against the
+// disk (complete targets are kept, partial ones redone), and a QUEUED file missing from the source
+// is taken as already moved.
+//
+// Every record carries its length and a CRC32, so a torn tail is detected and cut off on resume.
+// The journal is deleted when the run ends normally. While it is open, the run holds a RunFileLock on it: a journal
+// nobody holds was left by a run that died, one that is held belongs to a run still going (maybe in another
+// process) and is neither offered for resuming nor replayed.
+public class RunJournal implements Closeable {
+
+    private static final int MAGIC = 0x464A_524E;        // "FJRN"
+    private static final int VERSION = 1;
+    private static final long SYNC_MILLIS = 250;
+    private static final int KEEP_LEFT_OVER = 10;
+
+    private static final byte HEADER = 1, QUEUED = 2, SCAN_DONE = 3, INTENT = 4, DONE = 5, SKIPPED = 6, FAILED = 7, HISTORY = 8;
+
+    public record Header(Path source, Path destination, String action, boolean deepScan,
+                         Set<String> categoriesFilter, Map<String, Set<String>> extensionsFilter,
+                         OrganizeOptions.DateFolders dateFolders, boolean exifDates, boolean contentSniffing) {}
+
+    // category is "" for a file that was not classified yet (its content decides)
+    public record Queued(Path source, long size, long lastModified, String category) {}
+
+    public record Intent(Queued file, Path target, boolean overwrites) {}
+
+    // What is left to do after an interruption; history: where the run recorded its transfers (null: nowhere)
+    public record Replay(Header header, List<Queued> notStarted, List<Intent> interrupted,
+                         Set<Path> journaled, boolean scanDone, long finished, long validLength, Path history) {}
+
+    private final Path file;
+    private final Header header;
+    private final FileChannel channel;
+    private final RunFileLock lock;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(1 << 16);    // guarded by this
+    private final CRC32 crc = new CRC32();
+    private final Thread syncer;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private volatile RunHistory.Writer history;     // flushed before every batch
+
+    private RunJournal(Path file, Header header, FileChannel channel, RunFileLock lock) {
+        this.file = file;
+        this.header = header;
+        this.channel = channel;
+        this.lock = lock;
+        syncer = new Thread(this::syncLoop, "run-journal");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    // Default place for the journal of a new run: ~/.fileorganizer/journal/run-<time>.jnl.
+    // Only the last KEEP_LEFT_OVER journals of runs that died are kept for resuming.
+    public static Path newLocation() {
+        RunHistory.prune(leftOver(), KEEP_LEFT_OVER);
+        String name = "run-" + java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")) + ".jnl";
+        return journalFolder().resolve(name);
+    }
+
+    public static Path journalFolder() {
+        return Path.of(System.getProperty("user.home"), ".fileorganizer", "journal");
+    }
+
+    // Journals left behind by runs that did not end normally, oldest first (not those of runs still going)
+    public static List<Path> leftOver() {
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(journalFolder(), "*.jnl")) {
+            for (Path child : children) {
+                if (!RunFileLock.isInUse(child)) found.add(child);
+            }
+        } catch (IOException e) {
+            // no folder yet: nothing left over
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    public static RunJournal create(Path file, Header header) throws IOException {
+        if (file.toAbsolutePath().getParent() != null) Files.createDirectories(file.toAbsolutePath().getParent());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        RunJournal journal = new RunJournal(file, header, channel, lock(channel, file));
+        journal.writeHeader();
+        journal.sync();
+        return journal;
+    }
+
+    // Continues an interrupted journal after its valid part (a torn last record is cut off)
+    public static RunJournal reopen(Path file, Replay replay) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        RunFileLock lock = lock(channel, file);
+        channel.truncate(replay.validLength());
+        channel.position(replay.validLength());
+        return new RunJournal(file, replay.header(), channel, lock);
+    }
+
+    private static RunFileLock lock(FileChannel channel, Path file) throws IOException {
+        try {
+            return RunFileLock.acquire(channel, file);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getFile() { return file; }
+    public Header getHeader() { return header; }
+
+    //============================================= WRITE ===========================================================
+
+    private void writeHeader() throws IOException {
+        append(HEADER, out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(header.source().toString());
+            out.writeUTF(header.destination().toString());
+            out.writeUTF(header.action());
+            out.writeBoolean(header.deepScan());
+            out.writeBoolean(header.categoriesFilter() != null);
+            if (header.categoriesFilter() != null) writeStrings(out, header.categoriesFilter());
+            Map<String, Set<String>> exts = header.extensionsFilter() != null ? header.extensionsFilter() : Map.of();
+            out.writeInt(exts.size());
+            for (Map.Entry<String, Set<String>> e : exts.entrySet()) {
+                out.writeUTF(e.getKey());
+                writeStrings(out, e.getValue());
+            }
+            out.writeUTF(header.dateFolders().name());
+            out.writeBoolean(header.exifDates());
+            out.writeBoolean(header.contentSniffing());
+        });
+    }
+
+    // category null: not classified yet
+    public void queued(Path source, long size, long lastModified, String category) {
+        append(QUEUED, out -> {
+            out.writeUTF(relative(header.source(), source));
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeUTF(category != null ? category : "");
+        });
+    }
+
+    public void scanDone() {
+        append(SCAN_DONE, out -> {});
+    }
+
+    // The history of the run (null: none); flushed from now on whenever the journal syncs
+    public void history(RunHistory.Writer writer) {
+        history = writer;
+        append(HISTORY, out -> out.writeUTF(writer != null ? writer.getFile().toAbsolutePath().toString() : ""));
+    }
+
+    public void intent(Path source, Path target, boolean overwrites) {
+        append(INTENT, out -> {
+            out.writeUTF(relative(header.source(), source));
+            out.writeUTF(relative(header.destination(), target));
+            out.writeBoolean(overwrites);
+        });
+    }
+
+    public void done(Path source) { outcome(DONE, source); }
+    public void skipped(Path source) { outcome(SKIPPED, source); }
+    public void failed(Path source) { outcome(FAILED, source); }
+
+    private void outcome(byte type, Path source) {
+        append(type, out -> out.writeUTF(relative(header.source(), source)));
+    }
+
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // Frame: type, length, payload, CRC32 of type + payload
+    private synchronized void append(byte type, Body body) {
+        if (closed || failure != null) return;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            body.write(out);
+            byte[] payload = bytes.toByteArray();
+
+            crc.reset();
+            crc.update(type);
+            crc.update(payload);
+
+            DataOutputStream frame = new DataOutputStream(pending);
+            frame.writeByte(type);
+            frame.writeInt(payload.length);
+            frame.write(payload);
+            frame.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            failure = e;        // ByteArrayOutputStream does not throw; kept for the compiler
+        }
+    }
+
+    private void syncLoop() {
+        while (!closed) {
+            try {
+                Thread.sleep(SYNC_MILLIS);
+                sync();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                failure = e;        // disk full etc.: stop journaling, keep the run going
+                return;
+            }
+        }
+    }
+
+    // Writes everything appended so far and forces it to disk, the history first
+    public void sync() throws IOException {
+        byte[] batch;
+        synchronized (this) {
+            if (pending.size() == 0) return;
+            batch = pending.toByteArray();
+            pending.reset();
+        }
+        RunHistory.Writer writer = history;
+        if (writer != null) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                // the history reports its own failure when it is closed; the journal goes on
+            }
+        }
+        synchronized (channel) {
+            ByteBuffer buffer = ByteBuffer.wrap(batch);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        }
+    }
+
+    public IOException getFailure() { return failure; }
+
+    // The run ended normally: nothing to resume, so the journal goes away
+    public void finish() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    // Stops journaling but keeps the file (e.g. the run was interrupted on purpose)
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        syncer.interrupt();
+        try {
+            sync();
+        } finally {
+            channel.close();
+            lock.release();
+        }
+    }
+
+    //============================================= REPLAY ===========================================================
+
+    // Reads a journal up to its last intact record and works out what is left to do
+    public static Replay replay(Path file) throws IOException {
+        if (RunFileLock.isInUse(file)) throw new IOException("The run is still going: " + file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            Header header = null;
+            Map<String, Queued> queued = new LinkedHashMap<>();
+            Map<String, Intent> intents = new HashMap<>();
+            Set<String> settled = new HashSet<>();
+            boolean scanDone = false;
+            Path history = null;
+            long validLength = 0;
+            CRC32 check = new CRC32();
+
+            while (true) {
+                byte type;
+                byte[] payload;
+                try {
+                    type = in.readByte();
+                    int length = in.readInt();
+                    if (length < 0 || length > (1 << 20)) break;
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    check.reset();
+                    check.update(type);
+                    check.update(payload);
+                    if (in.readInt() != (int) check.getValue()) break;
+                } catch (EOFException e) {
+                    break;                          // torn tail
+                }
+
+                DataInputStream r = new DataInputStream(new ByteArrayInputStream(payload));
+                if (header == null) {
+                    if (type != HEADER) throw new IOException("Not a run journal: " + file);
+                    header = readHeader(r, file);
+                } else {
+                    switch (type) {
+                        case QUEUED -> {
+                            String rel = r.readUTF();
+                            queued.put(rel, new Queued(header.source().resolve(rel), r.readLong(), r.readLong(), r.readUTF()));
+                        }
+                        case SCAN_DONE -> scanDone = true;
+                        case INTENT -> {
+                            String rel = r.readUTF();
+                            Queued q = queued.get(rel);
+                            Path target = header.destination().resolve(r.readUTF());
+                            boolean overwrites = r.readBoolean();
+                            if (q != null) intents.put(rel, new Intent(q, target, overwrites));
+                        }
+                        case DONE, SKIPPED, FAILED -> settled.add(r.readUTF());
+                        case HISTORY -> {
+                            String path = r.readUTF();
+                            history = path.isEmpty() ? null : Path.of(path);
+                        }
+                        default -> throw new IOException("Unknown journal record " + type + ": " + file);
+                    }
+                }
+                validLength += 1 + 4 + payload.length + 4;
+            }
+            if (header == null) throw new IOException("Journal is empty: " + file);
+
+            List<Queued> notStarted = new ArrayList<>();
+            List<Intent> interrupted = new ArrayList<>();
+            Set<Path> journaled = new HashSet<>();
+            for (Map.Entry<String, Queued> e : queued.entrySet()) {
+                journaled.add(e.getValue().source());
+                if (settled.contains(e.getKey())) continue;
+                Intent intent = intents.get(e.getKey());
+                if (intent != null) interrupted.add(intent);
+                else notStarted.add(e.getValue());
+            }
+            return new Replay(header, notStarted, interrupted, journaled, scanDone, settled.size(), validLength, history);
+        }
+    }
+
+    private static Header readHeader(DataInputStream in, Path file) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a run journal: " + file);
+        if (in.readInt() != VERSION) throw new IOException("Not a run journal: " + file);
+        Path source = Path.of(in.readUTF()), destination = Path.of(in.readUTF());
+        String action = in.readUTF();
+        boolean deepScan = in.readBoolean();
+        Set<String> categories = in.readBoolean() ? readStrings(in) : null;
+        Map<String, Set<String>> exts = new HashMap<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) exts.put(in.readUTF(), readStrings(in));
+        OrganizeOptions.DateFolders dateFolders;
+        try {
+            dateFolders = OrganizeOptions.DateFolders.valueOf(in.readUTF());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Not a valid run journal (date folders): " + file);
+        }
+        boolean exifDates = in.readBoolean();
+        boolean contentSniffing = in.readBoolean();
+        return new Header(source, destination, action, deepScan, categories, exts.isEmpty() ? null : exts, dateFolders, exifDates,
+                contentSniffing);
+    }
+
+    private static void writeStrings(DataOutputStream out, Set<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String v : values) out.writeUTF(v);
+    }
+
+    private static Set<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Set<String> values = new HashSet<>();
+        for (int i = 0; i < count; i++) values.add(in.readUTF());
+        return values;
+    }
+
+    private static String relative(Path root, Path path) {
+        return root.relativize(path.toAbsolutePath().normalize()).toString();
+    }
+}
@@ -0,0 +1,342 @@
+import jdk.jfr.*;
+
+import javax.management.*;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Where a run spends its time, for finding out why a run is slow.
+//
+// - Time per stage (summed over all workers): listing the source, classifying files (including content
+//   sniffing and EXIF dates), creating folders, settling name collisions (including the prompt), transfers,
+//   and waiting for the transfer limits (TransferThrottle; large copies wait between chunks, inside transfer).
+// - Histograms: throughput of each transfer (bytes/s) and files finished per second of the run.
+// - Errors by exception type (AccessDeniedException, NoSuchFileException, ...).
+//
+// The numbers are readable over JMX while the run goes (MBean "fileorganizer:type=RunMetrics", the latest run)
+// and logged as a summary at the end. Only runs with OrganizeOptions.setMetrics(true) get one and pay for the
+// clock reads; without it the pipeline only checks for null.
+//
+// The JDK Flight Recorder events below are emitted whether or not a RunMetrics is set, but only while a
+// recording has them enabled: without one the pipeline reads a cached flag and creates no event, e.g.
+//   java -XX:StartFlightRecording:filename=run.jfr,settings=profile ...   then: jfr print --events fileorganizer.* run.jfr
+public final class RunMetrics {
+
+    public enum Stage {
+        LISTING("listing"), CLASSIFICATION("classification"), FOLDERS("folders"), COLLISIONS("collisions"), TRANSFER("transfer"),
+        THROTTLE("throttle");
+
+        private final String label;
+
+        Stage(String label) { this.label = label; }
+
+        public String label() { return label; }
+    }
+
+    public static final String OBJECT_NAME = "fileorganizer:type=RunMetrics";
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder[] stageNanos = new LongAdder[Stage.values().length];
+    private final LongAdder files = new LongAdder(), bytes = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final Histogram bytesPerSecond = new Histogram(), filesPerSecond = new Histogram();
+    private long window = -1, windowFiles;                  // second of the run being counted, files in it
+    private volatile long endNanos;                         // 0 while the run goes
+
+    public RunMetrics() {
+        for (int i = 0; i < stageNanos.length; i++) stageNanos[i] = new LongAdder();
+    }
+
+    //============================================= RECORD ===========================================================
+
+    public void stage(Stage stage, long nanos) {
+        stageNanos[stage.ordinal()].add(nanos);
+    }
+
+    // One finished transfer of size bytes that took nanos
+    public void transferred(long size, long nanos) {
+        stage(Stage.TRANSFER, nanos);
+        files.increment();
+        bytes.add(size);
+        if (size > 0 && nanos > 0) bytesPerSecond.add((long) (size * 1e9 / nanos));
+
+        // Seconds without a finished file count too (a stall shows up as 0 files/s)
+        long second = (System.nanoTime() - startNanos) / 1_000_000_000L;
+        synchronized (filesPerSecond) {
+            if (window == Long.MAX_VALUE) return;           // finished: a late transfer does not reopen the count
+            if (second != window) {
+                if (window >= 0) {
+                    filesPerSecond.add(windowFiles);
+                    for (long idle = window + 1; idle < second; idle++) filesPerSecond.add(0);
+                }
+                window = second;
+                windowFiles = 0;
+            }
+            windowFiles++;
+        }
+    }
+
+    public void error(Throwable e) {
+        LongAdder counter = errors.get(e.getClass().getSimpleName());
+        if (counter == null) counter = errors.computeIfAbsent(e.getClass().getSimpleName(), k -> new LongAdder());
+        counter.increment();
+    }
+
+    //============================================= REPORT ===========================================================
+
+    // Makes this run the one the MBean shows (replacing the previous run)
+    public void publish(Consumer<String> log) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            synchronized (RunMetrics.class) {
+                if (server.isRegistered(name)) server.unregisterMBean(name);
+                server.registerMBean(new View(), name);
+            }
+        } catch (JMException | RuntimeException e) {
+            log.accept("[WARNING] Run metrics are not available over JMX: " + e.getMessage());
+        }
+    }
+
+    // Closes the last files/s window, logs the summary and emits the RunSummary event
+    public void finish(Consumer<String> log, long errorCount) {
+        endNanos = System.nanoTime();
+        synchronized (filesPerSecond) {
+            if (window >= 0) filesPerSecond.add(windowFiles);
+            window = Long.MAX_VALUE;
+        }
+        for (String line : summary()) log.accept("[INFO] " + line);
+
+        RunSummaryEvent event = new RunSummaryEvent();
+        if (event.shouldCommit()) {
+            event.files = files.sum();
+            event.bytes = bytes.sum();
+            event.errors = errorCount;
+            event.listingNanos = stageNanos[Stage.LISTING.ordinal()].sum();
+            event.classificationNanos = stageNanos[Stage.CLASSIFICATION.ordinal()].sum();
+            event.foldersNanos = stageNanos[Stage.FOLDERS.ordinal()].sum();
+            event.collisionsNanos = stageNanos[Stage.COLLISIONS.ordinal()].sum();
+            event.transferNanos = stageNanos[Stage.TRANSFER.ordinal()].sum();
+            event.throttleNanos = stageNanos[Stage.THROTTLE.ordinal()].sum();
+            event.commit();
+        }
+    }
+
+    public List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        double seconds = Math.max(elapsedNanos(), 1) / 1e9;
+        lines.add(String.format(Locale.ROOT, "Metrics: %d files, %s in %.1f s (%s/s, %.1f files/s)", files.sum(),
+                RunProgress.formatBytes(bytes.sum()), seconds, RunProgress.formatBytes((long) (bytes.sum() / seconds)), files.sum() / seconds));
+
+        StringJoiner stages = new StringJoiner(", ", "Metrics: time per stage (all workers): ", "");
+        for (Stage stage : Stage.values()) stages.add(stage.label() + " " + millis(stageNanos[stage.ordinal()].sum()));
+        lines.add(stages.toString());
+
+        if (!errors.isEmpty()) lines.add("Metrics: errors: " + join(errorsByType()));
+        if (!bytesPerSecond.isEmpty()) lines.add("Metrics: transfer speed (files): " + join(bytesPerSecond.toMap(true)));
+        if (!filesPerSecond.isEmpty()) lines.add("Metrics: files per second (seconds): " + join(filesPerSecond.toMap(false)));
+        return lines;
+    }
+
+    private long elapsedNanos() {
+        long end = endNanos;
+        return (end != 0 ? end : System.nanoTime()) - startNanos;
+    }
+
+    private Map<String, Long> errorsByType() {
+        Map<String, Long> byType = new TreeMap<>();
+        errors.forEach((type, count) -> byType.put(type, count.sum()));
+        return byType;
+    }
+
+    private static String millis(long nanos) {
+        return nanos >= 10_000_000_000L ? String.format(Locale.ROOT, "%.1f s", nanos / 1e9) : nanos / 1_000_000 + " ms";
+    }
+
+    private static String join(Map<String, Long> counts) {
+        StringJoiner text = new StringJoiner(", ");
+        counts.forEach((key, count) -> text.add(key + ": " + count));
+        return text.toString();
+    }
+
+    // Power-of-two buckets: a value lands in [2^k, 2^(k+1)), 0 has a bucket of its own
+    private static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[65];
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        void add(long value) {
+            buckets[value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value)].increment();
+        }
+
+        boolean isEmpty() {
+            for (LongAdder bucket : buckets) if (bucket.sum() > 0) return false;
+            return true;
+        }
+
+        // Non-empty buckets in ascending order, labelled by their lower bound ("≥ 16 MB" for bytes)
+        Map<String, Long> toMap(boolean asBytes) {
+            Map<String, Long> map = new LinkedHashMap<>();
+            for (int i = 0; i < buckets.length; i++) {
+                long count = buckets[i].sum();
+                if (count == 0) continue;
+                long low = i == 0 ? 0 : 1L << (i - 1);
+                map.put(asBytes ? "≥ " + RunProgress.formatBytes(low) + "/s" : i <= 1 ? String.valueOf(low) : low + "-" + ((low << 1) - 1), count);
+            }
+            return map;
+        }
+    }
+
+    //============================================= JMX ===========================================================
+
+    public interface MetricsMXBean {
+        long getFiles();
+        long getBytes();
+        long getElapsedMillis();
+        boolean isFinished();
+        Map<String, Long> getStageMillis();
+        Map<String, Long> getErrorsByType();
+        Map<String, Long> getBytesPerSecondHistogram();
+        Map<String, Long> getFilesPerSecondHistogram();
+    }
+
+    private final class View implements MetricsMXBean {
+        public long getFiles() { return files.sum(); }
+        public long getBytes() { return bytes.sum(); }
+        public long getElapsedMillis() { return elapsedNanos() / 1_000_000; }
+        public boolean isFinished() { return endNanos != 0; }
+
+        public Map<String, Long> getStageMillis() {
+            Map<String, Long> map = new LinkedHashMap<>();
+            for (Stage stage : Stage.values()) map.put(stage.label(), stageNanos[stage.ordinal()].sum() / 1_000_000);
+            return map;
+        }
+
+        public Map<String, Long> getErrorsByType() { return errorsByType(); }
+        public Map<String, Long> getBytesPerSecondHistogram() { return bytesPerSecond.toMap(true); }
+        public Map<String, Long> getFilesPerSecondHistogram() { return filesPerSecond.toMap(false); }
+    }
+
+    //============================================= JFR EVENTS ===========================================================
+
+    @Name("fileorganizer.Transfer")
+    @Label("File Transfer")
+    @Category("File Organizer")
+    @Description("One file moved or copied into the destination")
+    static final class TransferEvent extends Event {
+        @Label("Source") String source;
+        @Label("Target") String target;
+        @Label("Category") String category;
+        @Label("Action") String action;
+        @Label("Size") @DataAmount long size;
+    }
+
+    @Name("fileorganizer.Collision")
+    @Label("Name Collision")
+    @Category("File Organizer")
+    @Description("A target name that was already taken, and what was done about it")
+    static final class CollisionEvent extends Event {
+        @Label("Target") String target;
+        @Label("Decision") String decision;
+        @Label("Identical Copy") boolean identical;
+    }
+
+    @Name("fileorganizer.FolderCreated")
+    @Label("Folder Created")
+    @Category("File Organizer")
+    static final class FolderEvent extends Event {
+        @Label("Folder") String folder;
+    }
+
+    @Name("fileorganizer.TransferError")
+    @Label("Transfer Error")
+    @Category("File Organizer")
+    static final class ErrorEvent extends Event {
+        @Label("Source") String source;
+        @Label("Type") String type;
+        @Label("Message") String message;
+    }
+
+    @Name("fileorganizer.RunSummary")
+    @Label("Run Summary")
+    @Category("File Organizer")
+    @Description("Totals of a run that collected metrics; stage times are summed over all workers")
+    static final class RunSummaryEvent extends Event {
+        @Label("Files") long files;
+        @Label("Bytes") @DataAmount long bytes;
+        @Label("Errors") long errors;
+        @Label("Listing") @Timespan long listingNanos;
+        @Label("Classification") @Timespan long classificationNanos;
+        @Label("Folders") @Timespan long foldersNanos;
+        @Label("Collisions") @Timespan long collisionsNanos;
+        @Label("Transfer") @Timespan long transferNanos;
+        @Label("Throttle") @Timespan long throttleNanos;
+    }
+
+    // Per file events are only created (and begun) while a recording has them enabled; null otherwise
+    private static final EventType TRANSFER = EventType.getEventType(TransferEvent.class),
+            COLLISION = EventType.getEventType(CollisionEvent.class), FOLDER = EventType.getEventType(FolderEvent.class),
+            ERROR = EventType.getEventType(ErrorEvent.class);
+
+    static TransferEvent transferEvent() {
+        if (!TRANSFER.isEnabled()) return null;
+        TransferEvent event = new TransferEvent();
+        event.begin();
+        return event;
+    }
+
+    static CollisionEvent collisionEvent() {
+        if (!COLLISION.isEnabled()) return null;
+        CollisionEvent event = new CollisionEvent();
+        event.begin();
+        return event;
+    }
+
+    static FolderEvent folderEvent() {
+        if (!FOLDER.isEnabled()) return null;
+        FolderEvent event = new FolderEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commit(TransferEvent event, Path source, Path target, String category, String action, long size) {
+        if (event == null || !event.shouldCommit()) return;
+        event.source = source.toString();
+        event.target = target.toString();
+        event.category = category;
+        event.action = action;
+        event.size = size;
+        event.commit();
+    }
+
+    static void commit(CollisionEvent event, Path target, OverwriteDecision decision, boolean identical) {
+        if (event == null || !event.shouldCommit()) return;
+        event.target = target.toString();
+        event.decision = decision.name();
+        event.identical = identical;
+        event.commit();
+    }
+
+    static void commit(FolderEvent event, File folder) {
+        if (event == null || !event.shouldCommit()) return;
+        event.folder = folder.getPath();
+        event.commit();
+    }
+
+    static void errorEvent(Path source, Throwable e) {
+        if (!ERROR.isEnabled()) return;
+        ErrorEvent event = new ErrorEvent();
+        if (event.shouldCommit()) {
+            event.source = source.toString();
+            event.type = e.getClass().getSimpleName();
+            event.message = e.getMessage();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Saved execution plan of an organize run ("dry run"): what would be moved/copied where,
+// which category folders would be created and how each name collision would be resolved.
+//
+// The plan is streamed to a gzip'ed binary file while the source is walked, so nothing but the
+// current record is held in memory, even for millions of files. Paths are stored relative to the
+// source / destination folder. The file ends with an END record carrying the totals; a plan without
+// it (planning was interrupted) is rejected.
+//
+//   header : MAGIC, VERSION, source, destination, action, deepScan, onConflict, createdAt
+//   FOLDER : category folder to create (relative to the destination; nested with a folder template)
+//   FILE   : source path, size, mtime, target path, category, resolution
+//   END    : files, bytes, folders, collisions
+public final class RunPlan {
+
+    private static final int MAGIC = 0x4650_4C4E;       // "FPLN"
+    private static final int VERSION = 2;           // 2: category in FILE records
+
+    private static final byte FOLDER = 1, FILE = 2, END = 0;
+
+    // How a planned file gets to its target
+    public enum Resolution {
+        NEW,            // target name is free
+        OVERWRITE,      // target exists and is replaced
+        KEEP_BOTH,      // target exists; the file goes to the "name (n).ext" stored in the plan
+        SKIP            // target exists; the file stays where it is
+    }
+
+    public record Header(Path source, Path destination, String action, boolean deepScan,
+                         OverwriteDecision onConflict, long createdAt) {}
+
+    public record Summary(long files, long bytes, long folders, long collisions) {}
+
+    // One FILE record, paths already resolved against the header folders
+    public record Item(Path source, long size, long lastModified, Path target, String category, Resolution resolution) {}
+
+    private RunPlan() {}
+
+    //============================================= WRITE ===========================================================
+
+    // Not thread-safe: records are written from the thread that walks the source
+    public static final class Writer implements Closeable {
+        private final Header header;
+        private final DataOutputStream out;
+        private long files, bytes, folders, collisions;
+        private boolean finished;
+
+        public Writer(Path planFile, Header header) throws IOException {
+            this.header = header;
+            Path parent = planFile.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+
+            out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(planFile), 1 << 16), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(header.source().toString());
+            out.writeUTF(header.destination().toString());
+            out.writeUTF(header.action());
+            out.writeBoolean(header.deepScan());
+            out.writeUTF(header.onConflict().name());
+            out.writeLong(header.createdAt());
+        }
+
+        public Header getHeader() { return header; }
+
+        public void folder(String folder) throws IOException {
+            out.writeByte(FOLDER);
+            out.writeUTF(folder);
+            folders++;
+        }
+
+        public void file(Path source, long size, long lastModified, Path target, String category, Resolution resolution) throws IOException {
+            out.writeByte(FILE);
+            out.writeUTF(header.source().relativize(source).toString());
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeUTF(header.destination().relativize(target).toString());
+            out.writeUTF(category);
+            out.writeByte(resolution.ordinal());
+            files++;
+            if (resolution != Resolution.SKIP) bytes += size;
+            if (resolution != Resolution.NEW) collisions++;
+        }
+
+        // Marks the plan complete; a plan closed without finish() cannot be executed
+        public Summary finish() throws IOException {
+            out.writeByte(END);
+            out.writeLong(files);
+            out.writeLong(bytes);
+            out.writeLong(folders);
+            out.writeLong(collisions);
+            finished = true;
+            return new Summary(files, bytes, folders, collisions);
+        }
+
+        public boolean isFinished() { return finished; }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    //============================================= READ ===========================================================
+
+    public interface Visitor {
+        void onFolder(String folder) throws IOException;
+
+        // Return false to stop reading
+        boolean onFile(Item item) throws IOException;
+    }
+
+    public static Header readHeader(Path planFile) throws IOException {
+        try (DataInputStream in = open(planFile)) {
+            return header(in);
+        }
+    }
+
+    // Streams the plan through the visitor; returns the totals from the END record
+    public static Summary read(Path planFile, Visitor visitor) throws IOException {
+        try (DataInputStream in = open(planFile)) {
+            Header header = header(in);
+            Resolution[] resolutions = Resolution.values();
+
+            while (true) {
+                byte tag;
+                try {
+                    tag = in.readByte();
+                } catch (EOFException e) {
+                    throw new IOException("Plan is incomplete (planning did not finish): " + planFile);
+                }
+
+                switch (tag) {
+                    case FOLDER -> visitor.onFolder(in.readUTF());
+                    case FILE -> {
+                        Path source = header.source().resolve(in.readUTF());
+                        long size = in.readLong(), lastModified = in.readLong();
+                        Path target = header.destination().resolve(in.readUTF());
+                        String category = in.readUTF();
+                        Resolution resolution = resolutions[in.readUnsignedByte()];
+                        if (!visitor.onFile(new Item(source, size, lastModified, target, category, resolution))) return null;
+                    }
+                    case END -> {
+                        return new Summary(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+                    }
+                    default -> throw new IOException("Not a valid plan file (record " + tag + "): " + planFile);
+                }
+            }
+        }
+    }
+
+    private static DataInputStream open(Path planFile) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(planFile), 1 << 16), 1 << 16));
+    }
+
+    private static Header header(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a plan file");
+        int version = in.readInt();
+        if (version < VERSION) throw new IOException("Plan file of an older version, plan the run again");
+        if (version != VERSION) throw new IOException("Not a plan file");
+        return new Header(Path.of(in.readUTF()), Path.of(in.readUTF()), in.readUTF(), in.readBoolean(),
+                OverwriteDecision.valueOf(in.readUTF()), in.readLong());
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Live progress of an organize run, shared by the workers (writers) and the GUI/CLI (readers).
+//
+// Workers only bump LongAdders, so updating it costs no locking and no string building on the copy path.
+// Readers call snapshot() at their own pace; throughput and ETA are worked out there, not per file.
+//
+// Totals are the files that passed the filters: known up front when the run replays a scan manifest,
+// growing while the source is walked otherwise (Snapshot.totalKnown() tells which).
+public class RunProgress {
+
+    // Rate samples closer together than this are merged, so fast polling does not make the rate jumpy
+    private static final long MIN_SAMPLE_NANOS = 500_000_000L;
+    private static final double RATE_SMOOTHING = 0.3;          // weight of the newest sample
+
+    // Point-in-time view; etaSeconds is -1 while it cannot be estimated
+    public record Snapshot(long filesTotal, long bytesTotal, long filesDone, long bytesDone,
+                           long transferred, long skipped, long errors,
+                           double bytesPerSecond, double filesPerSecond, long etaSeconds, long elapsedMillis,
+                           boolean totalKnown, Map<String, Long> transferredByCategory) {
+
+        // 0..1 by bytes, or by files when the planned files are all empty
+        public double fraction() {
+            if (bytesTotal > 0) return Math.min(1.0, (double) bytesDone / bytesTotal);
+            if (filesTotal > 0) return Math.min(1.0, (double) filesDone / filesTotal);
+            return 0;
+        }
+    }
+
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder filesTotal = new LongAdder(), bytesTotal = new LongAdder();
+    private final LongAdder filesDone = new LongAdder(), bytesDone = new LongAdder();      // planned files finished, any outcome
+    private final LongAdder bytesInFlight = new LongAdder();                               // chunks of large files not finished yet
+    private final LongAdder transferred = new LongAdder(), skipped = new LongAdder(), errors = new LongAdder();
+    private final Map<String, LongAdder> byCategory = new ConcurrentHashMap<>();
+    private volatile boolean totalKnown;
+
+    // Rate state, only touched by snapshot()
+    private long lastSampleNanos = startNanos, lastBytes, lastFiles;
+    private double bytesRate = -1, filesRate = -1;
+
+    //============================================= WRITERS ===========================================================
+
+    // A file passed the filters and will be handled by this run
+    public void planned(long bytes) {
+        filesTotal.increment();
+        bytesTotal.add(bytes);
+    }
+
+    // All planned files have been counted (the scan or manifest replay is over)
+    public void totalKnown() {
+        totalKnown = true;
+    }
+
+    public void transferred(String category, long bytes) {
+        transferred.increment();
+        LongAdder counter = byCategory.get(category);
+        if (counter == null) counter = byCategory.computeIfAbsent(category, c -> new LongAdder());
+        counter.increment();
+        done(bytes);
+    }
+
+    // Part of a large file written; take it back with a negative count once the file is finished
+    public void partial(long bytes) {
+        bytesInFlight.add(bytes);
+    }
+
+    // A planned file that was left in place (e.g. the target exists and the decision was Skip)
+    public void skipped(long bytes) {
+        skipped.increment();
+        done(bytes);
+    }
+
+    // A planned file that a later check (e.g. after content sniffing) left out after all
+    public void unplanned(long bytes) {
+        filesTotal.decrement();
+        bytesTotal.add(-bytes);
+    }
+
+    // A file the filters left out; it was never part of the totals
+    public void filteredOut() {
+        skipped.increment();
+    }
+
+    public void failed(long bytes) {
+        errors.increment();
+        done(bytes);
+    }
+
+    private void done(long bytes) {
+        filesDone.increment();
+        bytesDone.add(bytes);
+    }
+
+    //============================================= READERS ===========================================================
+
+    public long getTransferred() { return transferred.sum(); }
+    public long getSkipped() { return skipped.sum(); }
+    public long getErrors() { return errors.sum(); }
+
+    public synchronized Snapshot snapshot() {
+        long now = System.nanoTime();
+        long files = filesDone.sum(), bytes = bytesDone.sum() + bytesInFlight.sum();
+        long elapsed = now - startNanos;
+
+        long sinceSample = now - lastSampleNanos;
+        if (sinceSample >= MIN_SAMPLE_NANOS) {
+            double seconds = sinceSample / 1e9;
+            double newBytesRate = (bytes - lastBytes) / seconds, newFilesRate = (files - lastFiles) / seconds;
+            bytesRate = bytesRate < 0 ? newBytesRate : bytesRate + RATE_SMOOTHING * (newBytesRate - bytesRate);
+            filesRate = filesRate < 0 ? newFilesRate : filesRate + RATE_SMOOTHING * (newFilesRate - filesRate);
+            lastSampleNanos = now;
+            lastBytes = bytes;
+            lastFiles = files;
+        }
+
+        // Until the first sample, the average since the start is the best guess
+        double seconds = Math.max(elapsed, 1) / 1e9;
+        double byteSpeed = bytesRate < 0 ? bytes / seconds : bytesRate;
+        double fileSpeed = filesRate < 0 ? files / seconds : filesRate;
+
+        long totalFiles = filesTotal.sum(), totalBytes = bytesTotal.sum();
+        long eta = -1;
+        if (totalKnown) {
+            if (totalBytes > 0 && byteSpeed > 0) eta = (long) Math.ceil(Math.max(0, totalBytes - bytes) / byteSpeed);
+            else if (totalBytes == 0 && fileSpeed > 0) eta = (long) Math.ceil(Math.max(0, totalFiles - files) / fileSpeed);
+        }
+
+        Map<String, Long> categories = new TreeMap<>();
+        byCategory.forEach((category, counter) -> categories.put(category, counter.sum()));
+
+        return new Snapshot(totalFiles, totalBytes, files, bytes,
+                transferred.sum(), skipped.sum(), errors.sum(),
+                byteSpeed, fileSpeed, eta, elapsed / 1_000_000, totalKnown, Collections.unmodifiableMap(categories));
+    }
+
+    // Compact one-line description, e.g. "120 / 450 files · 1.2 GB of 3.4 GB · 85.0 MB/s · ETA 0:27"
+    public static String describe(Snapshot s) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(s.filesDone()).append(" / ").append(s.filesTotal()).append(s.totalKnown() ? "" : "+").append(" files");
+        if (s.bytesTotal() > 0) sb.append(" · ").append(formatBytes(s.bytesDone())).append(" of ").append(formatBytes(s.bytesTotal()));
+        sb.append(" · ").append(formatBytes((long) s.bytesPerSecond())).append("/s");
+        if (s.etaSeconds() >= 0) sb.append(" · ETA ").append(formatDuration(s.etaSeconds()));
+        return sb.toString();
+    }
+
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        String[] units = {"KB", "MB", "GB", "TB"};
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format("%.1f %s", value, units[unit]);
+    }
+
+    public static String formatDuration(long seconds) {
+        long h = seconds / 3600, m = (seconds % 3600) / 60, s = seconds % 60;
+        return h > 0 ? String.format("%d:%02d:%02d", h, m, s) : String.format("%d:%02d", m, s);
+    }
+}
@@ -0,0 +1,228 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// On-disk index of a source folder (every folder with its mtime, every file with size and mtime),
+// so later runs do not have to list the whole tree again.
+//
+// reconcile() stats each known folder once; only folders whose mtime changed (a file was added,
+// removed or renamed in them) are listed again. Files whose content changes in place do not touch
+// the folder mtime, so they are only picked up when their folder is re-listed for another reason.
+//
+// The file is written to a temp file and moved into place, and carries a CRC32; anything that does
+// not load cleanly is thrown away and the index is rebuilt from a full scan.
+public class ScanIndex {
+
+    private static final int MAGIC = 0x46494458;        // "FIDX"
+    private static final int VERSION = 1;
+
+    private record FileRecord(String name, long size, long lastModified) {}
+
+    private static final class DirRecord {
+        long lastModified;
+        List<String> subdirs = new ArrayList<>();
+        List<FileRecord> files = new ArrayList<>();
+    }
+
+    // Result of a reconcile: the whole current tree, and just the files that are new or changed since the last save
+    public record Reconciled(ScanManifest all, ScanManifest changed, int foldersListed, int foldersReused) {}
+
+    private final Path indexFile;
+    private final Path root;
+    private final boolean deepScan;
+    private Map<String, DirRecord> dirs = new HashMap<>();     // key: folder path relative to root ("" = root)
+
+    private ScanIndex(Path indexFile, Path root, boolean deepScan) {
+        this.indexFile = indexFile;
+        this.root = root;
+        this.deepScan = deepScan;
+    }
+
+    // Default place for the index of a source folder: ~/.fileorganizer/index/<hash of folder + scan level>.idx
+    public static Path defaultLocation(String sourceFolder, boolean deepScan) {
+        String key = Path.of(sourceFolder).toAbsolutePath().normalize() + (deepScan ? "|deep" : "|top");
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            return Path.of(System.getProperty("user.home"), ".fileorganizer", "index",
+                    HexFormat.of().formatHex(digest, 0, 10) + ".idx");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);         // SHA-1 is always available
+        }
+    }
+
+    // Loads the index if it exists and belongs to this folder; otherwise starts empty (everything counts as new)
+    public static ScanIndex load(Path indexFile, String sourceFolder, boolean deepScan, Consumer<String> log) {
+        Path root = Path.of(sourceFolder).toAbsolutePath().normalize();
+        ScanIndex index = new ScanIndex(indexFile, root, deepScan);
+        if (!Files.exists(indexFile)) return index;
+
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(indexFile), 1 << 16), crc))) {
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("not an index file");
+            if (!in.readUTF().equals(root.toString()) || in.readBoolean() != deepScan) {
+                throw new IOException("index belongs to another folder");
+            }
+
+            Map<String, DirRecord> loaded = new HashMap<>();
+            int dirCount = in.readInt();
+            for (int d = 0; d < dirCount; d++) {
+                String rel = in.readUTF();
+                DirRecord dir = new DirRecord();
+                dir.lastModified = in.readLong();
+                int subdirCount = in.readInt();
+                for (int i = 0; i < subdirCount; i++) dir.subdirs.add(in.readUTF());
+                int fileCount = in.readInt();
+                for (int i = 0; i < fileCount; i++) dir.files.add(new FileRecord(in.readUTF(), in.readLong(), in.readLong()));
+                loaded.put(rel, dir);
+            }
+
+            long expected = crc.getValue();
+            if (in.readLong() != expected) throw new IOException("checksum mismatch");
+
+            index.dirs = loaded;
+        } catch (IOException | RuntimeException e) {
+            log.accept("[WARNING] Scan index is unreadable, rebuilding it: " + indexFile + " → " + e.getMessage());
+            try {
+                Files.deleteIfExists(indexFile);
+            } catch (IOException ignored) {
+                // rewritten on the next save anyway
+            }
+        }
+        return index;
+    }
+
+    // Brings the index up to date with the folder and returns the current tree plus the new/changed files.
+    // The index in memory is updated; call save() once the changed files have been processed.
+    public Reconciled reconcile(Consumer<String> log) {
+        Map<String, DirRecord> current = new HashMap<>();
+        List<ScanManifest.Entry> all = new ArrayList<>();
+        List<ScanManifest.Entry> changed = new ArrayList<>();
+        List<Path> subfolders = new ArrayList<>();              // pre-order, reversed at the end
+        int listed = 0, reused = 0;
+
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push("");
+
+        while (!pending.isEmpty()) {
+            String rel = pending.pop();
+            Path dirPath = rel.isEmpty() ? root : root.resolve(rel);
+
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(dirPath, BasicFileAttributes.class);
+                if (!attrs.isDirectory()) continue;
+            } catch (IOException e) {
+                if (rel.isEmpty()) log.accept("[ERROR] Could not read source folder: " + dirPath + " → " + e.getMessage());
+                continue;       // folder is gone
+            }
+
+            DirRecord old = dirs.get(rel);
+            DirRecord dir;
+            long mtime = attrs.lastModifiedTime().toMillis();
+
+            if (old != null && old.lastModified == mtime) {
+                dir = old;
+                reused++;
+                for (FileRecord f : dir.files) all.add(ScanManifest.entryFor(dirPath.resolve(f.name()), f.size(), f.lastModified()));
+            } else {
+                dir = list(dirPath, mtime, log);
+                listed++;
+
+                Map<String, FileRecord> before = new HashMap<>();
+                if (old != null) for (FileRecord f : old.files) before.put(f.name(), f);
+
+                for (FileRecord f : dir.files) {
+                    ScanManifest.Entry entry = ScanManifest.entryFor(dirPath.resolve(f.name()), f.size(), f.lastModified());
+                    all.add(entry);
+                    if (!f.equals(before.get(f.name()))) changed.add(entry);
+                }
+            }
+
+            current.put(rel, dir);
+            for (String sub : dir.subdirs) {
+                String subRel = rel.isEmpty() ? sub : rel + "/" + sub;
+                subfolders.add(root.resolve(subRel));
+                if (deepScan) pending.push(subRel);
+            }
+        }
+
+        dirs = current;
+        Collections.reverse(subfolders);
+
+        return new Reconciled(
+                ScanManifest.of(root, deepScan, all, subfolders),
+                ScanManifest.of(root, deepScan, changed, subfolders),
+                listed, reused);
+    }
+
+    // One listing of a folder; each entry is stat'ed once
+    private DirRecord list(Path dirPath, long mtime, Consumer<String> log) {
+        DirRecord dir = new DirRecord();
+        dir.lastModified = mtime;
+
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dirPath)) {
+            for (Path child : children) {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class);
+                    String name = child.getFileName().toString();
+                    if (attrs.isDirectory()) dir.subdirs.add(name);
+                    else dir.files.add(new FileRecord(name, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                } catch (IOException e) {
+                    log.accept("[WARNING] Could not read: " + child + " → " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.accept("[WARNING] Could not read: " + dirPath + " → " + e.getMessage());
+        }
+        return dir;
+    }
+
+    // Writes the index atomically (temp file + move), so a crash never leaves a half-written index behind
+    public void save() throws IOException {
+        Files.createDirectories(indexFile.getParent());
+        Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16), crc))) {
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(root.toString());
+            out.writeBoolean(deepScan);
+
+            out.writeInt(dirs.size());
+            for (Map.Entry<String, DirRecord> e : dirs.entrySet()) {
+                DirRecord dir = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(dir.lastModified);
+                out.writeInt(dir.subdirs.size());
+                for (String sub : dir.subdirs) out.writeUTF(sub);
+                out.writeInt(dir.files.size());
+                for (FileRecord f : dir.files) {
+                    out.writeUTF(f.name());
+                    out.writeLong(f.size());
+                    out.writeLong(f.lastModified());
+                }
+            }
+
+            out.writeLong(crc.getValue());      // everything written so far
+        }
+
+        try {
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
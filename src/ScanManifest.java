@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+// Result of one scan of a source folder: every file (path, size, mtime, extension, category)
+// plus the subfolders seen, deepest first. Built once and shared by the extension panels,
+// the organize run and the empty-folder cleanup, so a session walks the tree only once.
+public class ScanManifest {
+
+    public record Entry(Path path, long size, long lastModified, String ext, String category) {}
+
+    private final Path root;
+    private final boolean deepScan;
+    private final List<Entry> files = new ArrayList<>();
+    private final List<Path> directories = new ArrayList<>();            // post-order: children before parents
+    private final Map<String, Set<String>> extensionsByCategory = new HashMap<>();
+    private long totalBytes;
+    private long scanNanos;                                               // how long the walk took (0: not walked)
+    private boolean complete = true;
+
+    private ScanManifest(Path root, boolean deepScan) {
+        this.root = root;
+        this.deepScan = deepScan;
+        for (String category : FileOrganizerLogic.CATEGORIES) extensionsByCategory.put(category, new TreeSet<>());
+    }
+
+    // Walks the folder once (top-level or deep); unreadable entries are reported to log and skipped
+    public static ScanManifest build(String sourceFolder, boolean deepScan, Consumer<String> log) {
+        return build(sourceFolder, deepScan, log, () -> false, (category, ext) -> {});
+    }
+
+    // Same walk, but stoppable and reporting each (category, extension) pair the first time it is seen.
+    // A stopped scan returns the partial manifest with isComplete() == false.
+    public static ScanManifest build(String sourceFolder, boolean deepScan, Consumer<String> log,
+                                     BooleanSupplier cancelled, BiConsumer<String, String> onNewExtension) {
+        Path root = Path.of(sourceFolder).toAbsolutePath().normalize();
+        ScanManifest manifest = new ScanManifest(root, deepScan);
+        long start = System.nanoTime();
+
+        try {
+            SourceWalker.walk(root, deepScan, new SourceWalker.Visitor() {
+                @Override
+                public boolean onFile(Path file, BasicFileAttributes attrs) {
+                    if (cancelled.getAsBoolean()) {
+                        manifest.complete = false;
+                        return false;
+                    }
+
+                    Entry entry = manifest.add(file, attrs);
+                    if (manifest.extensionsByCategory.computeIfAbsent(entry.category(), k -> new TreeSet<>()).add(entry.ext())) {
+                        onNewExtension.accept(entry.category(), entry.ext());
+                    }
+                    return true;
+                }
+
+                @Override
+                public void onSubfolder(Path dir, BasicFileAttributes attrs) {
+                    manifest.directories.add(dir);
+                }
+
+                @Override
+                public void onError(Path path, IOException e) {
+                    log.accept("[WARNING] Could not read: " + path + " → " + e.getMessage());
+                }
+            });
+
+            // Parents were seen first; reversed, every folder comes after everything below it
+            Collections.reverse(manifest.directories);
+
+        } catch (IOException e) {
+            log.accept("[ERROR] Could not scan source folder: " + root + " → " + e.getMessage());
+        }
+        manifest.scanNanos = System.nanoTime() - start;
+        return manifest;
+    }
+
+    // Manifest assembled from already known entries (e.g. a reconciled ScanIndex); directories deepest first
+    static ScanManifest of(Path root, boolean deepScan, List<Entry> files, List<Path> directories) {
+        ScanManifest manifest = new ScanManifest(root, deepScan);
+        for (Entry entry : files) {
+            manifest.files.add(entry);
+            manifest.totalBytes += entry.size();
+            manifest.extensionsByCategory.computeIfAbsent(entry.category(), k -> new TreeSet<>()).add(entry.ext());
+        }
+        manifest.directories.addAll(directories);
+        return manifest;
+    }
+
+    static Entry entryFor(Path file, long size, long lastModified) {
+        String ext = FileOrganizerLogic.extOf(file.getFileName().toString());
+        return new Entry(file, size, lastModified, ext, FileOrganizerLogic.categoryForExt(ext));
+    }
+
+    private Entry add(Path file, BasicFileAttributes attrs) {
+        Entry entry = entryFor(file, attrs.size(), attrs.lastModifiedTime().toMillis());
+        files.add(entry);
+        totalBytes += attrs.size();
+        return entry;
+    }
+
+    // True if this manifest was built for the given folder and scan level
+    public boolean matches(String sourceFolder, boolean deepScan) {
+        return complete && sourceFolder != null && !sourceFolder.isBlank()
+                && this.deepScan == deepScan
+                && root.equals(Path.of(sourceFolder).toAbsolutePath().normalize());
+    }
+
+    public Path getRoot() { return root; }
+    public boolean isDeepScan() { return deepScan; }
+    public List<Entry> getFiles() { return Collections.unmodifiableList(files); }
+    public List<Path> getDirectories() { return Collections.unmodifiableList(directories); }
+    public Map<String, Set<String>> getExtensionsByCategory() { return extensionsByCategory; }
+    public long getTotalBytes() { return totalBytes; }
+    public long getScanNanos() { return scanNanos; }
+    public boolean isComplete() { return complete; }
+}
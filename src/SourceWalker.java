@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumSet;
+
+// Single-pass traversal of a source folder built on Files.walkFileTree.
+// Every entry is stat'ed once by the walker and its BasicFileAttributes are handed to the visitor,
+// so callers never need isFile()/isDirectory()/exists() again. The walker keeps its own stack,
+// so deeply nested trees cannot overflow the thread stack.
+public final class SourceWalker {
+
+    public interface Visitor {
+        // Called for every non-directory entry; return false to stop the walk (e.g. on cancel)
+        boolean onFile(Path file, BasicFileAttributes attrs);
+
+        // Called for every subfolder below root (also the ones a top-level scan does not enter), parents first
+        default void onSubfolder(Path dir, BasicFileAttributes attrs) {}
+
+        // Called once a directory is finished, with the number of direct entries and direct files it had
+        default void onDirectoryDone(Path dir, boolean isRoot, int entries, int files) {}
+
+        default void onError(Path path, IOException e) {}
+    }
+
+    private SourceWalker() {}
+
+    // deepScan == false only visits the direct children of root
+    public static void walk(Path root, boolean deepScan, Visitor visitor) throws IOException {
+        int maxDepth = deepScan ? Integer.MAX_VALUE : 1;
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), maxDepth, new CountingVisitor(root, visitor));
+    }
+
+    private static final class CountingVisitor implements FileVisitor<Path> {
+        private final Path root;
+        private final Visitor visitor;
+        private final Deque<int[]> counts = new ArrayDeque<>();     // {entries, files} per open directory
+
+        CountingVisitor(Path root, Visitor visitor) {
+            this.root = root;
+            this.visitor = visitor;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (!counts.isEmpty()) {
+                counts.peek()[0]++;
+                visitor.onSubfolder(dir, attrs);
+            }
+            counts.push(new int[2]);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            int[] parent = counts.peek();
+            if (parent != null) parent[0]++;
+
+            // Top-level scan: subfolders at depth 1 arrive here instead of preVisitDirectory
+            if (attrs.isDirectory()) {
+                visitor.onSubfolder(file, attrs);
+                return FileVisitResult.CONTINUE;
+            }
+
+            if (parent != null) parent[1]++;
+            return visitor.onFile(file, attrs) ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            visitor.onError(file, e);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+            int[] c = counts.pop();
+            if (e != null) visitor.onError(dir, e);
+            visitor.onDirectoryDone(dir, dir.equals(root), c[0], c[1]);
+            return FileVisitResult.CONTINUE;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.*;
+
+// Runs the per-file move/copy tasks of one organize run.
+// parallelism == 1 keeps the old behaviour (everything runs on the calling thread);
+// otherwise tasks go to a fixed pool and the traversal is throttled so only a bounded
+// number of tasks are queued at any time.
+public class TransferEngine implements AutoCloseable {
+
+    private final int parallelism;
+    private final ExecutorService pool;
+    private final Semaphore inFlight;
+    private final Phaser pending = new Phaser(1);
+
+    // One lock per target path, so two sources with the same name never write the same target at once.
+    // An entry lives only while tasks hold or wait for it: the map holds the paths in use, not every path of the run.
+    private final Map<Path, TargetLock> targetLocks = new ConcurrentHashMap<>();
+
+    private static final class TargetLock {
+        final Object monitor;
+        int users = 1;                              // only changed inside the map's compute functions
+
+        TargetLock(Object monitor) { this.monitor = monitor; }
+    }
+
+    public TransferEngine(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+
+        if (this.parallelism == 1) {
+            pool = null;
+            inFlight = null;
+        } else {
+            pool = Executors.newFixedThreadPool(this.parallelism, r -> {
+                Thread t = new Thread(r, "file-transfer");
+                t.setDaemon(true);
+                return t;
+            });
+            inFlight = new Semaphore(this.parallelism * 4);
+        }
+    }
+
+    public int getParallelism() { return parallelism; }
+
+    // Blocks the caller while the queue is full
+    public void submit(Runnable task) {
+        if (pool == null) {
+            task.run();
+            return;
+        }
+
+        inFlight.acquireUninterruptibly();
+        pending.register();
+        try {
+            pool.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    pending.arriveAndDeregister();
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.arriveAndDeregister();
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    // Waits for every submitted task to finish
+    public void awaitCompletion() {
+        if (pool == null) return;
+        pending.arriveAndAwaitAdvance();
+    }
+
+    // Lock object shared by every task writing to this target; each call is paired with a release()
+    public Object lockFor(Path target) {
+        return targetLocks.compute(key(target), (k, held) -> {
+            if (held == null) return new TargetLock(new Object());
+            held.users++;
+            return held;
+        }).monitor;
+    }
+
+    // Registers a lock for a path no other task is using; returns false if the path is taken.
+    // A successful claim is paired with a release(), like lockFor().
+    public boolean claim(Path target, Object lock) {
+        return targetLocks.putIfAbsent(key(target), new TargetLock(lock)) == null;
+    }
+
+    // The task is done with target; the last one to release it drops its lock
+    public void release(Path target) {
+        targetLocks.computeIfPresent(key(target), (k, held) -> --held.users == 0 ? null : held);
+    }
+
+    private static Path key(Path target) {
+        return target.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) pool.shutdownNow();
+    }
+}
@@ -0,0 +1,162 @@
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+// Keeps transfers under a bandwidth (bytes/s) and a files-per-second limit, so that a large run does not take
+// all of a shared drive. One throttle is shared by every worker of a run, and its limits can be changed while
+// the run goes: the GUI's limit spinners, or with the CLI's --limits-control "rate"/"files" commands on stdin
+// and JMX ("fileorganizer:type=Throttle").
+//
+// Each limit is a token bucket that fills at the limit per second and holds at most one second's worth.
+// A worker takes what it needs even when that drives the bucket into debt; the next one waits until the debt
+// is paid back. Only that bookkeeping is locked: workers wait in parallel, and nobody waits on a transfer
+// in progress. Waits are rechecked every 100 ms, so a changed (or lifted) limit also applies to workers
+// that are already waiting, and so does a cancelled run.
+//
+// Bytes are counted where they are really copied: a small file before it is copied, a large one chunk by chunk
+// (ChunkedTransfer), a rename within one drive not at all. Every file transferred is one operation.
+public final class TransferThrottle {
+
+    public static final String OBJECT_NAME = "fileorganizer:type=Throttle";
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Bucket bytes = new Bucket(), files = new Bucket();
+
+    // 0 = no limit
+    public long getBytesPerSecond() { return bytes.rate; }
+    public void setBytesPerSecond(long limit) { bytes.setRate(limit); }
+    public long getFilesPerSecond() { return files.rate; }
+    public void setFilesPerSecond(long limit) { files.setRate(limit); }
+
+    public boolean isLimited() { return bytes.rate > 0 || files.rate > 0; }
+    public boolean limitsBytes() { return bytes.rate > 0; }
+
+    //============================================= WAIT ===========================================================
+
+    // Waits for the turn of one file; returns the nanoseconds waited. Returns early once stopped.
+    public long file(BooleanSupplier stopped) {
+        return files.take(1, stopped);
+    }
+
+    // Waits for the turn of count bytes (taken now, paid back by whoever comes next)
+    public long bytes(long count, BooleanSupplier stopped) {
+        return bytes.take(count, stopped);
+    }
+
+    private static final class Bucket {
+        volatile long rate;                         // per second, 0 = no limit
+        private double tokens;                      // below 0: debt
+        private long refilled = System.nanoTime();
+
+        synchronized void setRate(long rate) {
+            if (rate < 0) throw new IllegalArgumentException("negative limit: " + rate);
+            refill();                               // what the old limit allowed so far
+            this.rate = rate;
+            tokens = rate == 0 ? 0 : Math.min(tokens, rate);
+        }
+
+        long take(long count, BooleanSupplier stopped) {
+            if (rate == 0) return 0;                // the whole cost of an unlimited bucket
+            long start = System.nanoTime();
+            while (true) {
+                long wait;
+                synchronized (this) {
+                    if (rate == 0) break;
+                    refill();
+                    if (tokens >= 0) {
+                        tokens -= count;
+                        break;
+                    }
+                    wait = (long) (-tokens * 1e9 / rate);
+                }
+                if (stopped.getAsBoolean()) break;
+                try {
+                    TimeUnit.NANOSECONDS.sleep(Math.max(1, Math.min(wait, MAX_WAIT_NANOS)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return System.nanoTime() - start;
+        }
+
+        // Adds what the limit allowed since the last refill, keeping at most one second's worth
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(rate, tokens + (now - refilled) * (double) rate / 1e9);
+            refilled = now;
+        }
+    }
+
+    //============================================= TEXT ===========================================================
+
+    // "20MB" or "20MB/s" (bytes per second, see OrganizeRules.parseBytes), "off" or "0" for no limit
+    public static long parseRate(String value) {
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        if (v.equals("off") || v.equals("none")) return 0;
+        long rate = OrganizeRules.parseBytes(v.replaceFirst("/s$", ""));
+        if (rate < 0) throw new IllegalArgumentException("negative limit: " + value);
+        return rate;
+    }
+
+    public static long parseCount(String value) {
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        if (v.equals("off") || v.equals("none")) return 0;
+        try {
+            long count = Long.parseLong(v.replaceFirst("/s$", ""));
+            if (count >= 0) return count;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("bad files per second: " + value);
+    }
+
+    // "20.0 MB/s, 50 files/s", or "off"
+    @Override
+    public String toString() {
+        if (!isLimited()) return "off";
+        StringJoiner text = new StringJoiner(", ");
+        if (bytes.rate > 0) text.add(RunProgress.formatBytes(bytes.rate) + "/s");
+        if (files.rate > 0) text.add(files.rate + " files/s");
+        return text.toString();
+    }
+
+    //============================================= JMX ===========================================================
+
+    public interface ThrottleMXBean {
+        long getBytesPerSecond();
+        void setBytesPerSecond(long limit);
+        long getFilesPerSecond();
+        void setFilesPerSecond(long limit);
+    }
+
+    // Makes the limits adjustable over JMX (replacing a throttle published before)
+    public void publish(Consumer<String> log) {
+        ThrottleMXBean view = new ThrottleMXBean() {
+            public long getBytesPerSecond() { return TransferThrottle.this.getBytesPerSecond(); }
+            public void setBytesPerSecond(long limit) {
+                TransferThrottle.this.setBytesPerSecond(limit);
+                log.accept("[INFO] Transfer limit (JMX): " + TransferThrottle.this);
+            }
+            public long getFilesPerSecond() { return TransferThrottle.this.getFilesPerSecond(); }
+            public void setFilesPerSecond(long limit) {
+                TransferThrottle.this.setFilesPerSecond(limit);
+                log.accept("[INFO] Transfer limit (JMX): " + TransferThrottle.this);
+            }
+        };
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            synchronized (TransferThrottle.class) {
+                if (server.isRegistered(name)) server.unregisterMBean(name);
+                server.registerMBean(new StandardMBean(view, ThrottleMXBean.class, true), name);
+            }
+        } catch (JMException | RuntimeException e) {
+            log.accept("[WARNING] Transfer limits cannot be changed over JMX: " + e.getMessage());
+        }
+    }
+}